@@ -28,19 +28,23 @@ import net.smoofyuniverse.map.WorldMapConfig;
 import net.smoofyuniverse.map.WorldMapLoader;
 import net.smoofyuniverse.mirage.api.modifier.ChunkModifier;
 import net.smoofyuniverse.mirage.api.modifier.ChunkModifierRegistryModule;
-import net.smoofyuniverse.mirage.api.volume.ChunkView.State;
+import net.smoofyuniverse.mirage.command.MirageCommand;
 import net.smoofyuniverse.mirage.config.serializer.BlockSetSerializer;
 import net.smoofyuniverse.mirage.config.world.WorldConfig;
 import net.smoofyuniverse.mirage.event.WorldListener;
 import net.smoofyuniverse.mirage.impl.internal.InternalBlockState;
 import net.smoofyuniverse.mirage.impl.internal.InternalServer;
 import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
-import net.smoofyuniverse.mirage.impl.network.NetworkChunk;
+import net.smoofyuniverse.mirage.impl.network.PreobfuscationTask;
+import net.smoofyuniverse.mirage.impl.network.async.CacheExecutor;
+import net.smoofyuniverse.mirage.impl.network.async.ObfuscationPool;
 import net.smoofyuniverse.mirage.resource.Pack;
 import net.smoofyuniverse.mirage.resource.Resources;
 import net.smoofyuniverse.mirage.util.BlockSet;
 import net.smoofyuniverse.mirage.util.BlockSet.SerializationPredicate;
+import net.smoofyuniverse.mirage.util.BlockUtil;
 import net.smoofyuniverse.mirage.util.IOUtil;
+import net.smoofyuniverse.mirage.util.StateSet;
 import net.smoofyuniverse.ore.update.UpdateChecker;
 import ninja.leaping.configurate.objectmapping.serialize.TypeSerializerCollection;
 import org.slf4j.Logger;
@@ -53,17 +57,26 @@ import org.spongepowered.api.event.game.GameReloadEvent;
 import org.spongepowered.api.event.game.state.GameInitializationEvent;
 import org.spongepowered.api.event.game.state.GamePreInitializationEvent;
 import org.spongepowered.api.event.game.state.GameStartedServerEvent;
+import org.spongepowered.api.event.game.state.GameStartingServerEvent;
+import org.spongepowered.api.event.game.state.GameStoppedServerEvent;
 import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
 import org.spongepowered.api.plugin.Plugin;
 import org.spongepowered.api.plugin.PluginContainer;
 import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.text.channel.MessageReceiver;
 import org.spongepowered.api.world.DimensionType;
 import org.spongepowered.api.world.DimensionTypes;
 import org.spongepowered.api.world.World;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 @Plugin(id = "mirage", name = "Mirage", version = "1.4.0", authors = "Yeregorix", description = "The best solution against xray users")
 public class Mirage {
@@ -83,6 +96,7 @@ public class Mirage {
 	private WorldMap<WorldConfig> configMap;
 
 	private Task obfuscationTask;
+	private final Map<UUID, PreobfuscationTask> preobfuscationTasks = new HashMap<>();
 
 	public Mirage() {
 		if (instance != null)
@@ -128,6 +142,7 @@ public class Mirage {
 				LOGGER.warn("Failed to optimize block: " + b.getId(), ex);
 			}
 		}
+		buildIdTables();
 
 		try {
 			Resources.loadResources(Pack.loadAll());
@@ -137,8 +152,10 @@ public class Mirage {
 
 		loadConfigs();
 
-		if (this.game.getServer() instanceof InternalServer)
+		if (this.game.getServer() instanceof InternalServer) {
 			this.game.getEventManager().registerListeners(this, new WorldListener());
+			this.game.getCommandManager().register(this, MirageCommand.create(), "mirage");
+		}
 
 		this.game.getEventManager().registerListeners(this, new UpdateChecker(LOGGER, this.container,
 				IOUtil.createConfigLoader(this.configDir.resolve("update.conf")), "Yeregorix", "Mirage"));
@@ -154,35 +171,92 @@ public class Mirage {
 		}
 	}
 
+	private void buildIdTables() {
+		BlockUtil.buildOpacityTable();
+		StateSet.invalidateTables();
+	}
+
 	@Listener
 	public void onGameReload(GameReloadEvent e) {
+		buildIdTables();
 		loadConfigs();
 	}
 
+	@Listener
+	public void onServerStarting(GameStartingServerEvent e) {
+		// Forge may have reassigned state ids while loading the registries of the world
+		buildIdTables();
+	}
+
 	@Listener
 	public void onServerStarted(GameStartedServerEvent e) {
 		if (this.game.getServer() instanceof InternalServer) {
 			this.obfuscationTask = Task.builder().execute(() -> {
-				for (World w : this.game.getServer().getWorlds()) {
-					for (NetworkChunk chunk : ((InternalWorld) w).getView().getLoadedOChunks()) {
-						if (chunk.getState() == State.OBFUSCATION_REQUESTED)
-							chunk.obfuscate();
-					}
-				}
+				for (World w : this.game.getServer().getWorlds())
+					((InternalWorld) w).getView().updatePendingObfuscation();
 			}).intervalTicks(1).submit(this);
 
+			resumePreobfuscations();
+
 			LOGGER.info("Mirage " + this.container.getVersion().orElse("?") + " was loaded successfully.");
 		} else {
 			LOGGER.error("!!WARNING!! Mirage was not loaded correctly. Be sure that the jar file is at the root of your mods folder!");
 		}
 	}
 
+	private void resumePreobfuscations() {
+		Path dir = getPreobfuscationDirectory();
+		if (!Files.isDirectory(dir))
+			return;
+
+		try (DirectoryStream<Path> st = Files.newDirectoryStream(dir, "*.conf")) {
+			for (Path file : st) {
+				try {
+					PreobfuscationTask task = PreobfuscationTask.load(file);
+					if (this.game.getServer().getWorld(task.getWorldId()).isPresent())
+						startPreobfuscation(task, null);
+				} catch (Exception ex) {
+					LOGGER.warn("Failed to resume preobfuscation: " + file, ex);
+				}
+			}
+		} catch (IOException ex) {
+			LOGGER.warn("Failed to list preobfuscation tasks", ex);
+		}
+	}
+
+	public void startPreobfuscation(PreobfuscationTask task, @Nullable MessageReceiver receiver) {
+		PreobfuscationTask previous = this.preobfuscationTasks.put(task.getWorldId(), task);
+		if (previous != null)
+			previous.stop();
+		task.start(receiver);
+	}
+
+	public Optional<PreobfuscationTask> getPreobfuscationTask(UUID worldId) {
+		return Optional.ofNullable(this.preobfuscationTasks.get(worldId));
+	}
+
+	public Path getPreobfuscationDirectory() {
+		return this.cacheDir.resolve("preobfuscation");
+	}
+
 	@Listener
 	public void onServerStopping(GameStoppingServerEvent e) {
 		if (this.obfuscationTask != null) {
 			this.obfuscationTask.cancel();
 			this.obfuscationTask = null;
 		}
+
+		for (PreobfuscationTask task : this.preobfuscationTasks.values())
+			task.stop();
+		this.preobfuscationTasks.clear();
+
+		ObfuscationPool.shutdown();
+	}
+
+	@Listener
+	public void onServerStopped(GameStoppedServerEvent e) {
+		// Worlds have been saved, the remaining chunks can be written
+		CacheExecutor.shutdown();
 	}
 
 	public Path getConfigDirectory() {
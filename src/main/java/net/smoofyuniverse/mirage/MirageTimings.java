@@ -29,9 +29,9 @@ public class MirageTimings {
 	public static final Timing OBFUSCATION = of("Obfuscation"),
 			DEOBFUSCATION = of("Deobfuscation"),
 			REOBFUSCATION = of("Reobfuscation"),
-			WRITING_CACHE = of("Writing Cache"),
 			READING_CACHE = of("Reading Cache"),
-			DYNAMISM = of("Dynamism");
+			DYNAMISM = of("Dynamism"),
+			POINTWISE_MODIFIERS = of("Pointwise Modifiers");
 
 	public static Timing of(String name) {
 		return Timings.of(Mirage.get(), name);
@@ -28,16 +28,18 @@ import com.flowpowered.math.vector.Vector3i;
 import net.smoofyuniverse.mirage.api.cache.Signature;
 import net.smoofyuniverse.mirage.api.volume.BlockView;
 import net.smoofyuniverse.mirage.api.volume.ChunkView;
+import net.smoofyuniverse.mirage.api.volume.SectionView;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import org.spongepowered.api.CatalogType;
 import org.spongepowered.api.Sponge;
+import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.plugin.PluginContainer;
 import org.spongepowered.api.util.annotation.CatalogedBy;
 import org.spongepowered.api.world.DimensionType;
 import org.spongepowered.api.world.storage.WorldProperties;
 
-import java.util.Random;
+import java.util.*;
 
 /**
  * This object is used to modify chunk per chunk the view of the world sent to players.
@@ -120,16 +122,156 @@ public abstract class ChunkModifier implements CatalogType {
 		return true;
 	}
 
+	/**
+	 * Checks whether this modifier can be applied on a worker thread.
+	 * An async compatible modifier must only access the given ChunkView and its configuration,
+	 * and must not access the world or any other chunk.
+	 *
+	 * @return true if this modifier can be applied on a worker thread.
+	 */
+	public boolean isAsyncCompatible() {
+		return false;
+	}
+
+	/**
+	 * Checks whether this modifier only reads and modifies blocks between the given minimum and maximum positions.
+	 * Exposure checks are the only exception.
+	 * A section local modifier can be applied to all sections of a chunk in parallel, with a distinct Random object per section.
+	 * Sections without any block might be skipped.
+	 *
+	 * @return true if this modifier can be applied section per section.
+	 */
+	public boolean isSectionLocal() {
+		return false;
+	}
+
+	/**
+	 * Gets the blocks that this modifier might replace.
+	 * When this modifier is section local, sections that do not contain any of these blocks are skipped.
+	 *
+	 * @param config The configuration
+	 * @return The blocks, or {@link Optional#empty()} if this modifier might replace any block
+	 */
+	public Optional<Set<BlockState>> getTargets(Object config) {
+		return Optional.empty();
+	}
+
+	/**
+	 * Gets the lowest Y position this modifier might modify.
+	 * Sections and areas below this position are skipped.
+	 *
+	 * @param config The configuration
+	 * @return The minimum Y position
+	 */
+	public int getMinY(Object config) {
+		return 0;
+	}
+
+	/**
+	 * Gets the highest Y position this modifier might modify.
+	 * Sections and areas above this position are skipped.
+	 * A value lower than {@link #getMinY(Object)} means that this modifier never modifies anything.
+	 *
+	 * @param config The configuration
+	 * @return The maximum Y position
+	 */
+	public int getMaxY(Object config) {
+		return 255;
+	}
+
+	/**
+	 * @param config The configuration
+	 * @return The bitmask of the sections this modifier might modify
+	 */
+	public final int getSectionMask(Object config) {
+		int minY = Math.max(getMinY(config), 0), maxY = Math.min(getMaxY(config), 255);
+		if (minY > maxY)
+			return 0;
+		return 0xFFFF >>> (15 - (maxY >> 4)) & 0xFFFF << (minY >> 4);
+	}
+
 	/**
 	 * Modifies the ChunkView that will be send to players.
 	 * This method might check and modify thousands blocks and thus must optimized to be as fast as possible.
+	 * By default, only the layers between {@link #getMinY(Object)} and {@link #getMaxY(Object)} are given to the BlockView method.
 	 *
 	 * @param view The ChunkView to modify
 	 * @param r The Random object that should be used by the modifier
 	 * @param config The configuration
 	 */
 	public void modify(ChunkView view, Random r, Object config) {
-		modify(view, view.getBlockMin(), view.getBlockMax(), r, config);
+		Vector3i min = view.getBlockMin(), max = view.getBlockMax();
+		int minY = Math.max(min.getY(), getMinY(config)), maxY = Math.min(max.getY(), getMaxY(config));
+		if (minY <= maxY)
+			modify(view, new Vector3i(min.getX(), minY, min.getZ()), new Vector3i(max.getX(), maxY, max.getZ()), r, config);
+	}
+
+	/**
+	 * Checks whether this modifier is pointwise.
+	 * A pointwise modifier is section local and computes the new block of a position only from the current block and the exposure of this position.
+	 * Consecutive pointwise modifiers are applied together in a single sweep of each section.
+	 *
+	 * @return true if this modifier is pointwise.
+	 * @see #prepare(SectionView, Random, Object)
+	 */
+	public boolean isPointwise() {
+		return false;
+	}
+
+	/**
+	 * Gets the blocks that this pointwise modifier might place.
+	 * These blocks are added to the palette of a section before any operation is prepared.
+	 *
+	 * @param config The configuration
+	 * @return The blocks
+	 */
+	public Collection<BlockState> getReplacements(Object config) {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Prepares the operation of this pointwise modifier for a section.
+	 * The replacements of all modifiers of the sweep are already in the palette, so the ids and the tables computed here stay valid during the sweep.
+	 * The exposure mask must be obtained here, before any block of the section is modified.
+	 *
+	 * @param section The section to modify
+	 * @param r       The Random object that should be used by the operation
+	 * @param config  The configuration
+	 * @return The operation, or {@link Optional#empty()} if this modifier does not modify this section
+	 */
+	public Optional<PointOperation> prepare(SectionView section, Random r, Object config) {
+		throw new UnsupportedOperationException("Not a pointwise modifier");
+	}
+
+	/**
+	 * Modifies a section of the ChunkView that will be send to players.
+	 * This method is only called on section local modifiers and should be overridden to work directly with palette ids.
+	 * By default, pointwise modifiers apply their operation to all positions of the section.
+	 *
+	 * @param section The section to modify
+	 * @param r       The Random object that should be used by the modifier
+	 * @param config  The configuration
+	 */
+	public void modify(SectionView section, Random r, Object config) {
+		if (isPointwise()) {
+			for (BlockState b : getReplacements(config))
+				section.getOrCreateId(b);
+
+			PointOperation op = prepare(section, r, config).orElse(null);
+			if (op != null) {
+				for (int i = 0; i < 4096; i++) {
+					int id = section.getId(i), newId = op.apply(i, id);
+					if (newId != id)
+						section.setId(i, newId);
+				}
+			}
+			return;
+		}
+
+		ChunkView view = section.getChunk();
+		Vector3i min = view.getBlockMin(), max = view.getBlockMax();
+		int minY = section.getMinY();
+		modify(view, new Vector3i(min.getX(), minY, min.getZ()), new Vector3i(max.getX(), minY + 15, max.getZ()), r, config);
 	}
 
 	/**
@@ -22,12 +22,21 @@
 
 package net.smoofyuniverse.mirage.api.modifier;
 
+import org.spongepowered.api.block.BlockState;
+
+import javax.annotation.Nullable;
+import java.util.Set;
+
 /**
- * A simple object to hold a modifier and its configuration
+ * A simple object to hold a modifier and its configuration.
+ * The bounds and the targets declared by the modifier are resolved once.
  */
 public final class ConfiguredModifier {
 	public final ChunkModifier modifier;
 	public final Object config;
+	public final int minY, maxY, sections;
+	@Nullable
+	public final Set<BlockState> targets;
 
 	public ConfiguredModifier(ChunkModifier modifier, Object config) {
 		if (modifier == null)
@@ -36,5 +45,18 @@ public final class ConfiguredModifier {
 			throw new IllegalArgumentException("config");
 		this.modifier = modifier;
 		this.config = config;
+		this.minY = Math.max(modifier.getMinY(config), 0);
+		this.maxY = Math.min(modifier.getMaxY(config), 255);
+		this.sections = modifier.getSectionMask(config);
+		this.targets = modifier.getTargets(config).orElse(null);
+	}
+
+	/**
+	 * @param minY The minimum Y position
+	 * @param maxY The maximum Y position
+	 * @return Whether the modifier might modify a block between the given Y positions
+	 */
+	public boolean intersects(int minY, int maxY) {
+		return this.minY <= this.maxY && minY <= this.maxY && maxY >= this.minY;
 	}
 }
@@ -22,6 +22,8 @@
 
 package net.smoofyuniverse.mirage.api.volume;
 
+import java.util.Optional;
+
 /**
  * Represents a mutable client-side chunk.
  */
@@ -30,6 +32,14 @@ public interface ChunkView extends BlockView, OpaqueChunk {
 	@Override
 	ChunkStorage getStorage();
 
+	/**
+	 * Gets a low level view of a section of this chunk.
+	 *
+	 * @param index The index of the section, between 0 and 15
+	 * @return The section, or {@link Optional#empty()} if the section does not contain any block
+	 */
+	Optional<SectionView> getSection(int index);
+
 	/**
 	 * @return The state of this chunk.
 	 */
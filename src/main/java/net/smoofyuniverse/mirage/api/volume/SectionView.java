@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.api.volume;
+
+import org.spongepowered.api.block.BlockState;
+
+import java.util.function.Predicate;
+
+/**
+ * A low level view of a 16x16x16 section of a ChunkView.
+ * Blocks are designated by their id in the palette of the section and positions by their index in the section.
+ * Ids are only valid until a new block state is added to the palette, see {@link #getOrCreateId(BlockState)}.
+ */
+public interface SectionView {
+
+	/**
+	 * @return The chunk containing this section
+	 */
+	ChunkView getChunk();
+
+	/**
+	 * @return The lowest Y position of this section
+	 */
+	int getMinY();
+
+	/**
+	 * @return The number of ids in the palette, all ids are between 0 and this number (exclusive)
+	 */
+	int getPaletteSize();
+
+	/**
+	 * @param id The id
+	 * @return The block state associated with the id, or air if the id is not used
+	 */
+	BlockState getPaletteEntry(int id);
+
+	/**
+	 * Gets the id associated with the given block state, adding it to the palette if needed.
+	 * Adding a block state to the palette might change the ids of all block states of this section.
+	 * This method must therefore be called before reading any id or building any table.
+	 *
+	 * @param state The block state
+	 * @return The id
+	 */
+	int getOrCreateId(BlockState state);
+
+	/**
+	 * Builds a table indexed by id.
+	 *
+	 * @param predicate The predicate
+	 * @return A table of size {@link #getPaletteSize()} containing the result of the predicate for each entry of the palette
+	 */
+	default boolean[] mapPalette(Predicate<? super BlockState> predicate) {
+		boolean[] table = new boolean[getPaletteSize()];
+		for (int id = 0; id < table.length; id++)
+			table[id] = predicate.test(getPaletteEntry(id));
+		return table;
+	}
+
+	/**
+	 * @return A table of size {@link #getPaletteSize()} indicating for each entry of the palette whether it is opaque
+	 */
+	boolean[] getOpacityTable();
+
+	/**
+	 * Checks if the block at the given position is exposed to the view of normal users.
+	 * The exposure of all blocks of the section is computed at once on the first call and is not updated afterwards.
+	 *
+	 * @param index The index of the position
+	 * @return Whether the block is exposed
+	 */
+	default boolean isExposed(int index) {
+		return bit(getExposureMask(), index);
+	}
+
+	/**
+	 * Gets the exposure of all blocks of the section.
+	 * The mask is computed on the first call and is not updated afterwards.
+	 *
+	 * @return A mask where the bit i is set if the block at index i is exposed, must not be modified
+	 * @see #bit(long[], int)
+	 */
+	long[] getExposureMask();
+
+	/**
+	 * @param index The index of the position
+	 * @return The id of the block at the given position
+	 */
+	int getId(int index);
+
+	/**
+	 * Sets the id of the block at the given position.
+	 *
+	 * @param index The index of the position
+	 * @param id    The id, must be associated with a block state of the palette
+	 */
+	void setId(int index, int id);
+
+	/**
+	 * @param x The X position, relative to the section
+	 * @param y The Y position, relative to the section
+	 * @param z The Z position, relative to the section
+	 * @return The index of the position
+	 */
+	static int index(int x, int y, int z) {
+		return y << 8 | z << 4 | x;
+	}
+
+	/**
+	 * @param mask  The mask of 4096 bits
+	 * @param index The index of the position
+	 * @return Whether the bit of the position is set
+	 */
+	static boolean bit(long[] mask, int index) {
+		return (mask[index >> 6] >>> (index & 63) & 1L) != 0;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.command;
+
+import com.flowpowered.math.vector.Vector3i;
+import net.smoofyuniverse.mirage.Mirage;
+import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
+import net.smoofyuniverse.mirage.impl.network.NetworkWorld;
+import net.smoofyuniverse.mirage.impl.network.ObfuscationScheduler;
+import net.smoofyuniverse.mirage.impl.network.PreobfuscationTask;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.spec.CommandSpec;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.world.World;
+import org.spongepowered.api.world.storage.WorldProperties;
+
+import java.nio.file.Path;
+
+import static org.spongepowered.api.command.args.GenericArguments.integer;
+import static org.spongepowered.api.command.args.GenericArguments.optional;
+import static org.spongepowered.api.command.args.GenericArguments.world;
+
+public class MirageCommand {
+
+	public static CommandSpec create() {
+		return CommandSpec.builder()
+				.permission("mirage.command")
+				.child(pregen(), "pregen")
+				.child(build(), "build")
+				.child(status(), "status")
+				.build();
+	}
+
+	private static CommandSpec pregen() {
+		return CommandSpec.builder()
+				.permission("mirage.command.pregen")
+				.description(Text.of("Obfuscates and caches the chunks around the spawn of a world"))
+				.arguments(world(Text.of("world")), integer(Text.of("radius")))
+				.executor((src, args) -> {
+					WorldProperties world = args.<WorldProperties>getOne("world").get();
+					int radius = args.<Integer>getOne("radius").get();
+					if (radius < 0)
+						throw new CommandException(Text.of("Radius must be positive"));
+
+					Vector3i spawn = world.getSpawnPosition();
+					start(src, world, PreobfuscationTask.square(world.getUniqueId(), spawn.getX() >> 4, spawn.getZ() >> 4, radius, getFile(world)));
+					return CommandResult.success();
+				})
+				.build();
+	}
+
+	private static CommandSpec build() {
+		return CommandSpec.builder()
+				.permission("mirage.command.build")
+				.description(Text.of("Obfuscates and caches all the chunks saved in the region files of a world"))
+				.arguments(world(Text.of("world")))
+				.executor((src, args) -> {
+					WorldProperties world = args.<WorldProperties>getOne("world").get();
+					start(src, world, PreobfuscationTask.regions(world.getUniqueId(), getFile(world)));
+					return CommandResult.success();
+				})
+				.build();
+	}
+
+	private static CommandSpec status() {
+		return CommandSpec.builder()
+				.permission("mirage.command.status")
+				.description(Text.of("Shows the state of the obfuscation scheduler of the loaded worlds"))
+				.arguments(optional(world(Text.of("world"))))
+				.executor((src, args) -> {
+					WorldProperties filter = args.<WorldProperties>getOne("world").orElse(null);
+					for (World world : Sponge.getServer().getWorlds()) {
+						if (filter != null && !filter.getUniqueId().equals(world.getUniqueId()))
+							continue;
+
+						NetworkWorld view = ((InternalWorld) world).getView();
+						if (!view.isEnabled()) {
+							src.sendMessage(Text.of(world.getName() + ": obfuscation disabled"));
+							continue;
+						}
+
+						ObfuscationScheduler scheduler = view.getScheduler();
+						src.sendMessage(Text.of(world.getName() + ": " + scheduler.getQueueDepth() + " chunks queued and " + scheduler.getDeferred()
+								+ " deferred in the last tick, budget exceeded during " + scheduler.getOverruns() + " ticks"));
+					}
+					return CommandResult.success();
+				})
+				.build();
+	}
+
+	private static Path getFile(WorldProperties world) {
+		return PreobfuscationTask.getFile(Mirage.get().getPreobfuscationDirectory(), world.getUniqueId());
+	}
+
+	private static void start(CommandSource src, WorldProperties world, PreobfuscationTask task) throws CommandException {
+		if (!Sponge.getServer().getWorld(world.getUniqueId()).isPresent())
+			throw new CommandException(Text.of("World " + world.getWorldName() + " is not loaded"));
+
+		Mirage mirage = Mirage.get();
+		PreobfuscationTask previous = mirage.getPreobfuscationTask(world.getUniqueId()).orElse(null);
+		if (previous != null && previous.isRunning())
+			throw new CommandException(Text.of("A preobfuscation is already running in this world (" + previous.getIndex() + "/" + previous.getTotal() + " chunks)"));
+
+		try {
+			task.save();
+			mirage.startPreobfuscation(task, src);
+		} catch (Exception e) {
+			throw new CommandException(Text.of("Failed to start preobfuscation"), e);
+		}
+	}
+}
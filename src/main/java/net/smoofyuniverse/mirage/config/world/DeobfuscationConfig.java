@@ -31,17 +31,23 @@ public class DeobfuscationConfig {
 	public int naturalRadius = 1;
 	@Setting(value = "PlayerRadius", comment = "Radius to deobfuscate on player block update, between 1 and 4")
 	public int playerRadius = 2;
+	@Setting(value = "BulkThreshold", comment = "Number of blocks changed in a chunk by a single event above which whole sections are reobfuscated in background, 0 to disable")
+	public int bulkThreshold = 256;
+	@Setting(value = "BulkBudget", comment = "Time in milliseconds per tick spent reobfuscating sections after bulk edits, between 1 and 50")
+	public int bulkBudget = 5;
 
 	public Immutable toImmutable() {
-		return new Immutable(this.naturalRadius, this.playerRadius);
+		return new Immutable(this.naturalRadius, this.playerRadius, this.bulkThreshold, this.bulkBudget);
 	}
 
 	public static class Immutable {
-		public final int naturalRadius, playerRadius;
+		public final int naturalRadius, playerRadius, bulkThreshold, bulkBudget;
 
-		public Immutable(int naturalRadius, int playerRadius) {
+		public Immutable(int naturalRadius, int playerRadius, int bulkThreshold, int bulkBudget) {
 			this.naturalRadius = naturalRadius;
 			this.playerRadius = playerRadius;
+			this.bulkThreshold = bulkThreshold;
+			this.bulkBudget = bulkBudget;
 		}
 	}
 }
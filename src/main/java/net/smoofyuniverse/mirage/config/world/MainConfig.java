@@ -37,30 +37,40 @@ public class MainConfig {
 	public boolean cache = true;
 	@Setting(value = "Dynamism", comment = "Enable or disable dynamic obfuscation")
 	public boolean dynamism = true;
+	@Setting(value = "Async", comment = "Enable or disable obfuscating chunks on worker threads")
+	public boolean async = true;
+	@Setting(value = "Parallel", comment = "Enable or disable obfuscating the sections of a chunk in parallel")
+	public boolean parallel = true;
+	@Setting(value = "Budget", comment = "Time in milliseconds per tick spent obfuscating chunks requested by players, 0 to disable the limit")
+	public int budget = 10;
 	@Setting(value = "Dimension", comment = "The dimension used for automatic config generation")
 	public DimensionType dimension;
 	@Setting(value = "Deobfuscation")
 	public DeobfuscationConfig deobf = new DeobfuscationConfig();
 
 	public Immutable toImmutable() {
-		return new Immutable(this.enabled, this.cache, this.dynamism, this.dimension, this.deobf.toImmutable());
+		return new Immutable(this.enabled, this.cache, this.dynamism, this.async, this.parallel, this.budget, this.dimension, this.deobf.toImmutable());
 	}
 
 	public static class Immutable {
-		public final boolean enabled, cache, dynamism;
+		public final boolean enabled, cache, dynamism, async, parallel;
+		public final int budget;
 		public final DimensionType dimension;
 		public final DeobfuscationConfig.Immutable deobf;
 
-		public Immutable(boolean enabled, boolean cache, boolean dynamism, DimensionType dimension, DeobfuscationConfig.Immutable deobf) {
+		public Immutable(boolean enabled, boolean cache, boolean dynamism, boolean async, boolean parallel, int budget, DimensionType dimension, DeobfuscationConfig.Immutable deobf) {
 			this.enabled = enabled;
 			this.cache = cache;
 			this.dynamism = dynamism;
+			this.async = async;
+			this.parallel = parallel;
+			this.budget = budget;
 			this.dimension = dimension;
 			this.deobf = deobf;
 		}
 
 		public Immutable disable() {
-			return this.enabled ? new Immutable(false, this.cache, this.dynamism, this.dimension, this.deobf) : this;
+			return this.enabled ? new Immutable(false, this.cache, this.dynamism, this.async, this.parallel, this.budget, this.dimension, this.deobf) : this;
 		}
 	}
 }
@@ -83,8 +83,11 @@ public class WorldConfig {
 			cfg.dimension = Sponge.getRegistry().getType(DimensionType.class, i == -1 ? fn : fn.substring(0, i)).orElse(DimensionTypes.OVERWORLD);
 		}
 
+		cfg.budget = Math.max(cfg.budget, 0);
 		cfg.deobf.naturalRadius = clamp(cfg.deobf.naturalRadius, 1, 4);
 		cfg.deobf.playerRadius = clamp(cfg.deobf.playerRadius, 1, 4);
+		cfg.deobf.bulkThreshold = Math.max(cfg.deobf.bulkThreshold, 0);
+		cfg.deobf.bulkBudget = clamp(cfg.deobf.bulkBudget, 1, 50);
 
 		ConfigurationNode modsNode = root.getNode("Modifiers");
 
@@ -23,6 +23,8 @@
 package net.smoofyuniverse.mirage.event;
 
 import com.flowpowered.math.vector.Vector3i;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
 import net.smoofyuniverse.mirage.impl.network.NetworkChunk;
 import net.smoofyuniverse.mirage.impl.network.NetworkWorld;
@@ -39,8 +41,7 @@ import org.spongepowered.api.event.world.SaveWorldEvent;
 import org.spongepowered.api.world.Location;
 import org.spongepowered.api.world.World;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 public class WorldListener {
 
@@ -53,6 +54,7 @@ public class WorldListener {
 	@Listener(order = Order.POST)
 	public void onBlockChange(ChangeBlockEvent e) {
 		boolean player = e.getCause().containsType(Player.class);
+		Map<NetworkWorld, List<Vector3i>> opaque = new IdentityHashMap<>(), transparent = new IdentityHashMap<>();
 
 		for (Transaction<BlockSnapshot> t : e.getTransactions()) {
 			if (!t.isValid())
@@ -68,34 +70,24 @@ public class WorldListener {
 				continue;
 
 			NetworkWorld world = ((InternalWorld) loc.getExtent()).getView();
-			Vector3i pos = loc.getBlockPosition();
-
-			if (isOpaque)
-				world.reobfuscateSurrounding(pos, player, true);
-			else
-				world.deobfuscateSurrounding(pos, player, true);
+			(isOpaque ? opaque : transparent).computeIfAbsent(world, k -> new ArrayList<>()).add(loc.getBlockPosition());
 		}
+
+		Set<NetworkWorld> worlds = new HashSet<>(opaque.keySet());
+		worlds.addAll(transparent.keySet());
+
+		for (NetworkWorld world : worlds)
+			world.queueBlockChanges(opaque.getOrDefault(world, Collections.emptyList()), transparent.getOrDefault(world, Collections.emptyList()), player);
 	}
 
 	@Listener(order = Order.POST)
 	public void onExplosionDetonate(ExplosionEvent.Detonate e) {
-		Set<Vector3i> blocks = new HashSet<>();
-
-		for (Location<World> loc : e.getAffectedLocations()) {
-			Vector3i pos = loc.getBlockPosition();
-			blocks.add(pos.add(1, 0, 0));
-			blocks.add(pos.add(-1, 0, 0));
-			blocks.add(pos.add(0, 1, 0));
-			blocks.add(pos.add(0, -1, 0));
-			blocks.add(pos.add(0, 0, 1));
-			blocks.add(pos.add(0, 0, -1));
-		}
+		List<Location<World>> locations = e.getAffectedLocations();
+		LongSet blocks = new LongOpenHashSet(locations.size());
 
-		for (Location<World> loc : e.getAffectedLocations())
-			blocks.remove(loc.getBlockPosition());
+		for (Location<World> loc : locations)
+			blocks.add(NetworkWorld.packBlock(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ()));
 
-		NetworkWorld world = ((InternalWorld) e.getTargetWorld()).getView();
-		for (Vector3i pos : blocks)
-			world.deobfuscate(pos);
+		((InternalWorld) e.getTargetWorld()).getView().deobfuscateShell(blocks);
 	}
 }
@@ -22,9 +22,15 @@
 
 package net.smoofyuniverse.mirage.impl.internal;
 
+import net.minecraft.util.BitArray;
+import net.minecraft.world.chunk.IBlockStatePalette;
 import net.smoofyuniverse.mirage.impl.network.NetworkBlockContainer;
 
 public interface InternalBlockContainer {
 
 	NetworkBlockContainer getNetworkBlockContainer();
+
+	BitArray getStorage();
+
+	IBlockStatePalette getPalette();
 }
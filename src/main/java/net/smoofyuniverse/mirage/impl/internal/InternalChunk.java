@@ -39,6 +39,11 @@ public interface InternalChunk extends ChunkStorage {
 
 	void setValidCacheDate(long value);
 
+	/**
+	 * @return A number incremented each time the blocks, lights or tile entities of this chunk are modified
+	 */
+	int getModificationCount();
+
 	boolean captureContainers();
 
 	void requireContainer(int index);
@@ -37,4 +37,12 @@ public interface InternalChunkMap {
 	Optional<DynamicWorld> getDynamicWorld(UUID id);
 
 	void removeDynamicWorld(UUID id);
+
+	/**
+	 * Schedules the expiration of the chunk packet that an entry has just built.
+	 *
+	 * @param entry The entry
+	 * @param time  The world time at which the packet has been built
+	 */
+	void addChunkPacket(InternalChunkMapEntry entry, long time);
 }
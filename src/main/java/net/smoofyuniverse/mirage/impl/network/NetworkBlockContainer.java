@@ -22,6 +22,7 @@
 
 package net.smoofyuniverse.mirage.impl.network;
 
+import io.netty.buffer.Unpooled;
 import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
@@ -34,11 +35,22 @@ import net.smoofyuniverse.mirage.impl.internal.InternalBlockContainer;
 import net.smoofyuniverse.mirage.impl.network.cache.BlockContainerSnapshot;
 import net.smoofyuniverse.mirage.impl.network.change.ChunkChangeListener;
 import net.smoofyuniverse.mirage.impl.network.dynamic.DynamicChunk;
+import net.smoofyuniverse.mirage.util.BlockUtil;
+import org.spongepowered.api.block.BlockState;
 
 import javax.annotation.Nullable;
 import java.util.Arrays;
-
+import java.util.Set;
+
+/**
+ * The blocks of a section as seen by players.
+ * A detached container always stores its blocks in a dense palette array.
+ * A container attached to a real container only stores the positions where the fake block differs from the real one,
+ * sorted by index, and reads the real container everywhere else.
+ * It switches to a dense copy when too many positions differ or when palette ids are requested.
+ */
 public class NetworkBlockContainer implements IBlockStatePaletteResizer {
+	private static final int DENSE_THRESHOLD = 512, DENSE_DYNAMISM_THRESHOLD = 256;
 
 	@SuppressWarnings("deprecation")
 	private static final ObjectIntIdentityMap<IBlockState> BLOCK_STATE_IDS = Block.BLOCK_STATE_IDS;
@@ -48,20 +60,35 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 	private final BlockStateContainer container;
 
 	private IBlockStatePalette palette;
+	private boolean[] opacity;
+	private int paletteSize;
+	// index << 4 | distance sorted by index, only used while the nibble array is not allocated
+	private char[] dynamicEntries;
+	private int dynamicSize;
+	@Nullable
 	private NibbleArray dynamism;
 	private BitArray storage;
 	private int bits, minY = -1;
 
+	// index << 16 | state id, sorted by index
+	private int[] overlay;
+	private int overlaySize;
+	// The blocks as written in chunk packets, or null if they changed since the last packet
+	private byte[] serialized;
+
 	private final int[] dynCount = new int[16];
-	private int blockCount;
+	private int blockCount, revision;
 
 	boolean dirty = false;
 
-	public NetworkBlockContainer(BlockStateContainer container) {
+	/**
+	 * @param container The real container, or null if this container is detached
+	 */
+	public NetworkBlockContainer(@Nullable BlockStateContainer container) {
 		this.container = container;
-		this.dynamism = new NibbleArray();
 		this.dynCount[0] = 4096;
-		setBits(4);
+		if (container == null)
+			setBits(4);
 	}
 
 	public InternalBlockContainer getInternalBlockContainer() {
@@ -80,36 +107,447 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 		return this.blockCount == 0;
 	}
 
+	/**
+	 * Checks whether the palette of this container contains at least one of the given states.
+	 * The palette might still contain states which are no longer used, so this method might return false positives.
+	 *
+	 * @param states The states
+	 * @return false if this container does not contain any of the given states
+	 */
+	public boolean containsAny(Set<BlockState> states) {
+		if (this.storage == null) {
+			for (int k = 0; k < this.overlaySize; k++) {
+				if (states.contains((BlockState) stateAt(k)))
+					return true;
+			}
+			return containsAny(getInternalBlockContainer().getPalette(), 256, states);
+		}
+		return containsAny(this.palette, this.paletteSize, states);
+	}
+
+	private static boolean containsAny(IBlockStatePalette palette, int size, Set<BlockState> states) {
+		if (palette == REGISTRY_BASED_PALETTE)
+			return true;
+
+		for (int id = 0; id < size; id++) {
+			IBlockState state = palette.getBlockState(id);
+			if (state == null)
+				break;
+			if (states.contains((BlockState) state))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The number of ids in the palette
+	 */
+	public int getPaletteSize() {
+		requireDense();
+		return this.paletteSize;
+	}
+
+	/**
+	 * Gets a table indicating for each id whether the state is opaque.
+	 * The table is maintained as states are added to the palette and must not be modified.
+	 *
+	 * @return The opacity table, at least as long as the palette
+	 */
+	public boolean[] getOpacityTable() {
+		requireDense();
+		return this.opacity;
+	}
+
+	public boolean isOpaque(int index) {
+		if (this.storage == null) {
+			int k = find(index);
+			if (k >= 0)
+				return BlockUtil.isOpaque(this.overlay[k] & 0xFFFF);
+
+			InternalBlockContainer real = getInternalBlockContainer();
+			IBlockStatePalette palette = real.getPalette();
+			int id = real.getStorage().getAt(index);
+			return BlockUtil.isOpaque(palette == REGISTRY_BASED_PALETTE ? id : BLOCK_STATE_IDS.get(palette.getBlockState(id)));
+		}
+		return this.opacity[this.storage.getAt(index)];
+	}
+
+	/**
+	 * @return A mask where the bit i is set if the block at index i is not opaque
+	 */
+	public long[] getTransparencyMask() {
+		long[] mask = new long[64];
+		if (this.storage == null) {
+			InternalBlockContainer real = getInternalBlockContainer();
+			BitArray realStorage = real.getStorage();
+			boolean[] opaque = getOpacityTable(real.getPalette(), 1 << (realStorage.getBackingLongArray().length >> 6));
+			for (int i = 0; i < 4096; i++) {
+				if (!opaque[realStorage.getAt(i)])
+					mask[i >> 6] |= 1L << (i & 63);
+			}
+			for (int k = 0; k < this.overlaySize; k++) {
+				int i = this.overlay[k] >>> 16;
+				if (BlockUtil.isOpaque(this.overlay[k] & 0xFFFF))
+					mask[i >> 6] &= ~(1L << (i & 63));
+				else
+					mask[i >> 6] |= 1L << (i & 63);
+			}
+			return mask;
+		}
+
+		boolean[] opaque = this.opacity;
+		for (int i = 0; i < 4096; i++) {
+			if (!opaque[this.storage.getAt(i)])
+				mask[i >> 6] |= 1L << (i & 63);
+		}
+		return mask;
+	}
+
+	/**
+	 * Maps the ids of a palette to the opacity of their states.
+	 *
+	 * @param palette The palette
+	 * @param size    The number of ids
+	 * @return The opacity table, at least as long as the given size
+	 */
+	private static boolean[] getOpacityTable(IBlockStatePalette palette, int size) {
+		if (palette == REGISTRY_BASED_PALETTE)
+			return BlockUtil.getOpacityTable();
+
+		boolean[] table = new boolean[size];
+		for (int id = 0; id < size; id++)
+			table[id] = BlockUtil.isOpaque(BLOCK_STATE_IDS.get(palette.getBlockState(id)));
+		return table;
+	}
+
+	public IBlockState getPaletteEntry(int id) {
+		requireDense();
+		IBlockState state = this.palette.getBlockState(id);
+		return state == null ? AIR_BLOCK_STATE : state;
+	}
+
+	/**
+	 * Gets the id of the given state, adding it to the palette if needed.
+	 * The palette might be resized, changing the ids of all states.
+	 */
+	public int idFor(IBlockState state) {
+		requireDense();
+		return register(state);
+	}
+
+	/**
+	 * Gets the id of the given state and records the opacity of the states added to the palette.
+	 * Linear and hash map palettes allocate ids sequentially.
+	 */
+	private int register(IBlockState state) {
+		int id = this.palette.idFor(state);
+		if (id >= this.paletteSize) {
+			this.opacity[id] = BlockUtil.isOpaque(BLOCK_STATE_IDS.get(state));
+			this.paletteSize = id + 1;
+		}
+		return id;
+	}
+
+	public int getId(int index) {
+		requireDense();
+		return this.storage.getAt(index);
+	}
+
+	/**
+	 * Sets the id of a position. Id 0 is always air.
+	 *
+	 * @return Whether the id has changed
+	 */
+	public boolean setId(int index, int id) {
+		requireDense();
+		int oldId = this.storage.getAt(index);
+		if (oldId == id)
+			return false;
+
+		if (oldId == 0)
+			this.blockCount++;
+		else if (id == 0)
+			this.blockCount--;
+
+		this.storage.setAt(index, id);
+		this.dirty = true;
+		this.serialized = null;
+		return true;
+	}
+
+	/**
+	 * @return The number of changes made to the real container
+	 */
+	public int getRevision() {
+		return this.revision;
+	}
+
 	public IBlockState get(int index) {
+		if (this.storage == null) {
+			int k = find(index);
+			return k >= 0 ? stateAt(k) : this.container.get(index);
+		}
 		IBlockState state = this.palette.getBlockState(this.storage.getAt(index));
 		return state == null ? AIR_BLOCK_STATE : state;
 	}
 
 	private void _set(int index, IBlockState state) {
-		int i = this.palette.idFor(state);
-		this.storage.setAt(index, i);
 		this.dirty = true;
+		this.serialized = null;
+
+		if (this.storage == null) {
+			setOverlaid(index, state);
+			if (this.overlaySize > DENSE_THRESHOLD)
+				requireDense();
+			return;
+		}
+
+		int i = register(state);
+		this.storage.setAt(index, i);
 	}
 
-	private void setBits(int bits) {
-		if (this.bits != bits) {
-			this.bits = bits;
-
-			if (this.bits <= 4) {
-				this.bits = 4;
-				this.palette = new BlockStatePaletteLinear(this.bits, this);
-			} else if (this.bits <= 8) {
-				this.palette = new BlockStatePaletteHashMap(this.bits, this);
-			} else {
-				this.palette = REGISTRY_BASED_PALETTE;
-				this.bits = MathHelper.log2DeBruijn(BLOCK_STATE_IDS.size());
+	private IBlockState stateAt(int k) {
+		return BLOCK_STATE_IDS.getByValue(this.overlay[k] & 0xFFFF);
+	}
+
+	/**
+	 * @return The position of the index in the overlay, or (-(insertion point) - 1) if it is not overlaid
+	 */
+	private int find(int index) {
+		int low = 0, high = this.overlaySize - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1, i = this.overlay[mid] >>> 16;
+			if (i < index)
+				low = mid + 1;
+			else if (i > index)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	private void setOverlaid(int index, IBlockState state) {
+		int k = find(index);
+		if (state == this.container.get(index)) {
+			if (k >= 0)
+				removeOverlaid(k);
+			return;
+		}
+
+		int entry = index << 16 | BLOCK_STATE_IDS.get(state);
+		if (k >= 0) {
+			this.overlay[k] = entry;
+			return;
+		}
+
+		k = -(k + 1);
+		if (this.overlay == null)
+			this.overlay = new int[16];
+		else if (this.overlaySize == this.overlay.length)
+			this.overlay = Arrays.copyOf(this.overlay, this.overlaySize << 1);
+
+		System.arraycopy(this.overlay, k, this.overlay, k + 1, this.overlaySize - k);
+		this.overlay[k] = entry;
+		this.overlaySize++;
+	}
+
+	private void removeOverlaid(int k) {
+		System.arraycopy(this.overlay, k + 1, this.overlay, k, this.overlaySize - k - 1);
+		this.overlaySize--;
+	}
+
+	/**
+	 * Replaces the overlay and drops the dense copy.
+	 */
+	private void setOverlay(@Nullable int[] overlay, int size) {
+		this.overlay = size == 0 ? null : overlay;
+		this.overlaySize = size;
+		this.palette = null;
+		this.opacity = null;
+		this.storage = null;
+		this.paletteSize = 0;
+		this.bits = 0;
+	}
+
+	/**
+	 * Replaces the blocks of this container by the ones of the given container, using an overlay of the real container.
+	 *
+	 * @return false if too many positions differ from the real container, in which case this container is not modified
+	 */
+	private boolean setOverlay(NetworkBlockContainer source) {
+		int[] overlay = getDifferences(source, DENSE_THRESHOLD);
+		if (overlay == null)
+			return false;
+
+		for (int k = 0; k < overlay.length; k++) {
+			int i = overlay[k];
+			overlay[k] = i << 16 | BLOCK_STATE_IDS.get(source.get(i));
+		}
+		setOverlay(overlay, overlay.length);
+		return true;
+	}
+
+	/**
+	 * Finds the positions where the given container differs from the real container.
+	 * When the given container is dense and shares the palette layout of the real container,
+	 * the backing arrays are compared word by word and only the differing words are decoded.
+	 *
+	 * @param source The container to compare
+	 * @param limit  The maximum number of differences
+	 * @return The sorted indexes, or null if there are more differences than the limit
+	 */
+	@Nullable
+	private int[] getDifferences(NetworkBlockContainer source, int limit) {
+		InternalBlockContainer real = getInternalBlockContainer();
+		BitArray realStorage = real.getStorage();
+		int[] indexes = new int[16];
+		int size = 0;
+
+		if (source.storage != null && source.sharesLayout(real.getPalette(), realStorage)) {
+			BitArray storage = source.storage;
+			long[] data = storage.getBackingLongArray(), realData = realStorage.getBackingLongArray();
+			int bits = source.bits, next = 0;
+			for (int w = 0; w < data.length; w++) {
+				if (data[w] == realData[w])
+					continue;
+
+				// Entries might span two words
+				int last = Math.min(((w << 6) + 63) / bits, 4095);
+				for (int i = Math.max((w << 6) / bits, next); i <= last; i++) {
+					if (storage.getAt(i) != realStorage.getAt(i)) {
+						if (size == limit)
+							return null;
+						if (size == indexes.length)
+							indexes = Arrays.copyOf(indexes, size << 1);
+						indexes[size++] = i;
+					}
+				}
+				next = last + 1;
+			}
+		} else {
+			for (int i = 0; i < 4096; i++) {
+				if (source.get(i) != this.container.get(i)) {
+					if (size == limit)
+						return null;
+					if (size == indexes.length)
+						indexes = Arrays.copyOf(indexes, size << 1);
+					indexes[size++] = i;
+				}
 			}
+		}
+
+		return Arrays.copyOf(indexes, size);
+	}
+
+	/**
+	 * Checks whether the ids of this dense container have the same meaning as the ids of the given storage.
+	 * This is the case when both have the same bit width and the given palette is a prefix of the palette of this container.
+	 */
+	private boolean sharesLayout(IBlockStatePalette palette, BitArray storage) {
+		if (storage.getBackingLongArray().length != this.storage.getBackingLongArray().length)
+			return false;
+
+		if (this.palette == REGISTRY_BASED_PALETTE || palette == REGISTRY_BASED_PALETTE)
+			return this.palette == palette;
+
+		for (int id = 0; ; id++) {
+			IBlockState state = palette.getBlockState(id);
+			if (state == null)
+				return true;
+			if (id >= this.paletteSize || state != this.palette.getBlockState(id))
+				return false;
+		}
+	}
 
-			this.palette.idFor(AIR_BLOCK_STATE);
-			this.storage = new BitArray(this.bits, 4096);
+	/**
+	 * Copies the palette of a real container in order and its backing array as is, then applies the given overlay.
+	 * This container then shares the palette layout of the real container, unless the overlay resized the palette.
+	 */
+	private void copyReal(InternalBlockContainer real, @Nullable int[] overlay, int size) {
+		long[] data = real.getStorage().getBackingLongArray();
+		copyDense(real.getPalette(), data.length >> 6, data);
+
+		for (int k = 0; k < size; k++) {
+			int id = register(BLOCK_STATE_IDS.getByValue(overlay[k] & 0xFFFF));
+			this.storage.setAt(overlay[k] >>> 16, id);
 		}
 	}
 
+	/**
+	 * Replaces the blocks of this container by a palette, copied in order, and a backing array, copied as is.
+	 */
+	private void copyDense(IBlockStatePalette palette, int bits, long[] data) {
+		resetBits(bits);
+		if (this.palette != REGISTRY_BASED_PALETTE) {
+			int size = 1 << this.bits;
+			for (int id = 1; id < size; id++) {
+				IBlockState state = palette.getBlockState(id);
+				if (state == null)
+					break;
+				register(state);
+			}
+		}
+
+		System.arraycopy(data, 0, this.storage.getBackingLongArray(), 0, data.length);
+	}
+
+	/**
+	 * Copies the real container and the overlay into a dense palette array.
+	 * Palette ids are only valid in this representation.
+	 */
+	private void requireDense() {
+		if (this.storage != null)
+			return;
+
+		int[] overlay = this.overlay;
+		int size = this.overlaySize;
+		boolean dirty = this.dirty;
+		this.overlay = null;
+		this.overlaySize = 0;
+		copyReal(getInternalBlockContainer(), overlay, size);
+		this.dirty = dirty;
+	}
+
+	/**
+	 * Drops the dense copy of this container if the fake blocks differ from the real ones in few positions.
+	 * Detached containers are not affected.
+	 */
+	public void compact() {
+		if (this.container != null && this.storage != null)
+			setOverlay(this);
+	}
+
+	private void setBits(int bits) {
+		if (this.bits != bits)
+			resetBits(bits);
+	}
+
+	private void resetBits(int bits) {
+		this.bits = bits;
+
+		if (this.bits <= 4) {
+			this.bits = 4;
+			this.palette = new BlockStatePaletteLinear(this.bits, this);
+		} else if (this.bits <= 8) {
+			this.palette = new BlockStatePaletteHashMap(this.bits, this);
+		} else {
+			this.palette = REGISTRY_BASED_PALETTE;
+			this.bits = MathHelper.log2DeBruijn(BLOCK_STATE_IDS.size());
+		}
+
+		if (this.palette == REGISTRY_BASED_PALETTE) {
+			this.opacity = BlockUtil.getOpacityTable();
+			this.paletteSize = 1 << this.bits;
+		} else {
+			this.opacity = new boolean[1 << this.bits];
+			this.paletteSize = 0;
+		}
+
+		register(AIR_BLOCK_STATE);
+		this.storage = new BitArray(this.bits, 4096);
+	}
+
 	@Override
 	public int onResize(int bits, IBlockState state) {
 		BitArray oldStorage = this.storage;
@@ -122,23 +560,45 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 				_set(i, block);
 		}
 
-		return this.palette.idFor(state);
+		return register(state);
 	}
 
+	/**
+	 * Makes all fake blocks equal to the real ones and drops the dense copy.
+	 * Only the positions that differ are notified to the listener.
+	 */
 	public void deobfuscate(ChunkChangeListener listener) {
+		if (this.container == null)
+			throw new IllegalStateException("Detached container");
+
+		int[] indexes;
+		int size;
+		if (this.storage == null) {
+			indexes = this.overlay;
+			size = this.overlaySize;
+		} else {
+			indexes = getDifferences(this, 4096);
+			size = indexes.length;
+		}
+
+		if (listener != null) {
+			for (int k = 0; k < size; k++) {
+				int i = this.storage == null ? indexes[k] >>> 16 : indexes[k];
+				listener.addChange(i & 15, this.minY + (i >> 8 & 15), i >> 4 & 15);
+			}
+		}
+
+		BitArray realStorage = getInternalBlockContainer().getStorage();
 		this.blockCount = 0;
 		for (int i = 0; i < 4096; i++) {
-			IBlockState fakeState = get(i), realState = this.container.get(i);
-
-			if (realState.getBlock() != Blocks.AIR)
+			if (realStorage.getAt(i) != 0)
 				this.blockCount++;
+		}
 
-			if (fakeState != realState) {
-				_set(i, realState);
-
-				if (listener != null)
-					listener.addChange(i & 15, this.minY + (i >> 8 & 15), i >> 4 & 15);
-			}
+		setOverlay(null, 0);
+		if (size != 0) {
+			this.dirty = true;
+			this.serialized = null;
 		}
 	}
 
@@ -168,14 +628,88 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 		return y << 8 | z << 4 | x;
 	}
 
+	/**
+	 * Sets the dynamism distance of a position.
+	 * Distances are stored as a sorted list while few positions are dynamic, then in a nibble array.
+	 * The storage is released once all distances are back to zero.
+	 */
 	public void setDynamism(int index, int distance) {
-		int oldD = this.dynamism.getFromIndex(index);
-		if (oldD != distance) {
+		int oldD = getDynamism(index);
+		if (oldD == distance)
+			return;
+
+		this.dynCount[oldD]--;
+		this.dynCount[distance]++;
+		this.dirty = true;
+
+		if (this.dynCount[0] == 4096) {
+			releaseDynamism();
+			return;
+		}
+
+		if (this.dynamism != null) {
 			this.dynamism.setIndex(index, distance);
-			this.dynCount[oldD]--;
-			this.dynCount[distance]++;
-			this.dirty = true;
+			return;
+		}
+
+		int k = findDynamic(index);
+		if (distance == 0) {
+			System.arraycopy(this.dynamicEntries, k + 1, this.dynamicEntries, k, this.dynamicSize - k - 1);
+			this.dynamicSize--;
+			return;
+		}
+
+		char entry = (char) (index << 4 | distance);
+		if (k >= 0) {
+			this.dynamicEntries[k] = entry;
+			return;
+		}
+
+		if (this.dynamicSize == DENSE_DYNAMISM_THRESHOLD) {
+			NibbleArray array = new NibbleArray();
+			for (int j = 0; j < this.dynamicSize; j++) {
+				char e = this.dynamicEntries[j];
+				array.setIndex(e >> 4, e & 15);
+			}
+			array.setIndex(index, distance);
+			this.dynamicEntries = null;
+			this.dynamicSize = 0;
+			this.dynamism = array;
+			return;
+		}
+
+		k = -(k + 1);
+		if (this.dynamicEntries == null)
+			this.dynamicEntries = new char[16];
+		else if (this.dynamicSize == this.dynamicEntries.length)
+			this.dynamicEntries = Arrays.copyOf(this.dynamicEntries, this.dynamicSize << 1);
+
+		System.arraycopy(this.dynamicEntries, k, this.dynamicEntries, k + 1, this.dynamicSize - k);
+		this.dynamicEntries[k] = entry;
+		this.dynamicSize++;
+	}
+
+	/**
+	 * @return The position of the index in the dynamic entries, or (-(insertion point) - 1) if its distance is zero
+	 */
+	private int findDynamic(int index) {
+		int low = 0, high = this.dynamicSize - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1, i = this.dynamicEntries[mid] >> 4;
+			if (i < index)
+				low = mid + 1;
+			else if (i > index)
+				high = mid - 1;
+			else
+				return mid;
 		}
+		return -(low + 1);
+	}
+
+	private void releaseDynamism() {
+		this.dynamism = null;
+		this.dynamicEntries = null;
+		this.dynamicSize = 0;
 	}
 
 	public int getMaxDynamism() {
@@ -187,7 +721,7 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 	}
 
 	public void clearDynamism() {
-		this.dynamism = new NibbleArray();
+		releaseDynamism();
 		Arrays.fill(this.dynCount, 0);
 		this.dynCount[0] = 4096;
 		this.dirty = true;
@@ -202,13 +736,26 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 	}
 
 	public int getDynamism(int index) {
-		return this.dynamism.getFromIndex(index);
+		if (this.dynamism != null)
+			return this.dynamism.getFromIndex(index);
+		if (this.dynamicSize == 0)
+			return 0;
+		int k = findDynamic(index);
+		return k >= 0 ? this.dynamicEntries[k] & 15 : 0;
 	}
 
 	public void collectDynamicPositions(DynamicChunk chunk) {
 		if (this.dynCount[0] == 4096)
 			return;
 
+		if (this.dynamism == null) {
+			for (int k = 0; k < this.dynamicSize; k++) {
+				int i = this.dynamicEntries[k] >> 4;
+				chunk.add(i & 15, this.minY + (i >> 8 & 15), i >> 4 & 15, this.dynamicEntries[k] & 15);
+			}
+			return;
+		}
+
 		for (int i = 0; i < 4096; i++) {
 			int d = this.dynamism.getFromIndex(i);
 			if (d != 0)
@@ -232,10 +779,112 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 		}
 	}
 
+	/**
+	 * Called when the real container is about to be modified.
+	 */
+	public void onRealChange(int index, IBlockState state) {
+		this.revision++;
+		if (this.storage != null) {
+			set(index, state);
+			return;
+		}
+
+		int k = find(index);
+		IBlockState oldState = k >= 0 ? stateAt(k) : this.container.get(index);
+		if (k >= 0)
+			removeOverlaid(k);
+
+		if (oldState != state) {
+			if (oldState.getBlock() == Blocks.AIR)
+				this.blockCount++;
+			else if (state.getBlock() == Blocks.AIR)
+				this.blockCount--;
+
+			this.dirty = true;
+			this.serialized = null;
+		}
+	}
+
+	/**
+	 * @return A detached copy of this container
+	 */
+	public NetworkBlockContainer copy() {
+		NetworkBlockContainer copy = new NetworkBlockContainer(null);
+		copy.setY(this.minY);
+		copy.copyFrom(this);
+		return copy;
+	}
+
+	/**
+	 * Replaces the blocks and the dynamism of this container by the ones of the given container.
+	 * An attached container keeps an overlay if the given blocks differ from the real ones in few positions.
+	 *
+	 * @param other The container to copy
+	 */
+	public void copyFrom(NetworkBlockContainer other) {
+		if (other.minY != this.minY)
+			throw new IllegalArgumentException("Section");
+
+		if (this.container == null || !setOverlay(other))
+			copyBlocksFrom(other);
+		this.blockCount = other.blockCount;
+		this.serialized = null;
+
+		this.dynamism = other.dynamism == null ? null : new NibbleArray(other.dynamism.getData().clone());
+		this.dynamicEntries = other.dynamicEntries == null ? null : Arrays.copyOf(other.dynamicEntries, other.dynamicSize);
+		this.dynamicSize = other.dynamicSize;
+		System.arraycopy(other.dynCount, 0, this.dynCount, 0, this.dynCount.length);
+		this.dirty = true;
+	}
+
+	/**
+	 * Copies the blocks of the given container into a dense palette array.
+	 * The palette of a dense container is copied in order so the backing array can be copied as is.
+	 */
+	private void copyBlocksFrom(NetworkBlockContainer other) {
+		this.overlay = null;
+		this.overlaySize = 0;
+
+		if (other.storage == null)
+			copyReal(other.getInternalBlockContainer(), other.overlay, other.overlaySize);
+		else
+			copyDense(other.palette, other.bits, other.storage.getBackingLongArray());
+	}
+
+	/**
+	 * Gets the blocks as written in chunk packets.
+	 * The bytes are kept until a block changes so a section sent to several players, or sent again, is only encoded once.
+	 * An overlaid container is encoded from a temporary dense copy.
+	 */
+	private byte[] getSerialized() {
+		byte[] data = this.serialized;
+		if (data == null) {
+			if (this.storage == null && this.overlaySize != 0) {
+				NetworkBlockContainer copy = new NetworkBlockContainer(null);
+				copy.setY(this.minY);
+				copy.copyBlocksFrom(this);
+				data = copy.getSerialized();
+			} else {
+				data = new byte[this.storage == null ? this.container.getSerializedSize() :
+						1 + this.palette.getSerializedSize() + PacketBuffer.getVarIntSize(this.storage.size()) + this.storage.getBackingLongArray().length * 8];
+
+				PacketBuffer buf = new PacketBuffer(Unpooled.wrappedBuffer(data));
+				buf.writerIndex(0);
+				if (this.storage == null) {
+					this.container.write(buf);
+				} else {
+					buf.writeByte(this.bits);
+					this.palette.write(buf);
+					buf.writeLongArray(this.storage.getBackingLongArray());
+				}
+			}
+			this.serialized = data;
+		}
+		return data;
+	}
+
 	public void write(PacketBuffer buf) {
-		buf.writeByte(this.bits);
-		this.palette.write(buf);
-		buf.writeLongArray(this.storage.getBackingLongArray());
+		buf.writeBytes(getSerialized());
 	}
 
 	public void set(int x, int y, int z, IBlockState state) {
@@ -270,7 +919,7 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 		byte[] blockIds = new byte[4096];
 		NibbleArray data = new NibbleArray();
 		NibbleArray extension = getDataForNBT(blockIds, data);
-		byte[] dynamism = this.dynamism.getData().clone();
+		byte[] dynamism = getDynamismData();
 
 		out.setSection(this.minY >> 4);
 		out.setBlockIds(blockIds);
@@ -283,9 +932,10 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 		if (in.getSection() != this.minY >> 4)
 			throw new IllegalArgumentException("Section");
 
+		requireDense();
 		setDataFromNBT(in.getBlockIds(), new NibbleArray(in.getData()), in.getExtension() == null ? null : new NibbleArray(in.getExtension()));
-		this.dynamism = new NibbleArray(in.getDynamism().clone());
-		recalculateDynCount();
+		compact();
+		setDynamismData(in.getDynamism());
 		this.dirty = true;
 	}
 
@@ -307,12 +957,58 @@ public class NetworkBlockContainer implements IBlockStatePaletteResizer {
 	}
 
 	public int getSerializedSize() {
-		return 1 + this.palette.getSerializedSize() + PacketBuffer.getVarIntSize(this.storage.size()) + this.storage.getBackingLongArray().length * 8;
+		return getSerialized().length;
+	}
+
+	/**
+	 * @return The distances as a nibble array, or null if all distances are zero
+	 */
+	@Nullable
+	private byte[] getDynamismData() {
+		if (this.dynamism != null)
+			return this.dynamism.getData().clone();
+		if (this.dynamicSize == 0)
+			return null;
+
+		NibbleArray array = new NibbleArray();
+		for (int k = 0; k < this.dynamicSize; k++) {
+			char e = this.dynamicEntries[k];
+			array.setIndex(e >> 4, e & 15);
+		}
+		return array.getData();
 	}
 
-	private void recalculateDynCount() {
+	private void setDynamismData(@Nullable byte[] data) {
+		releaseDynamism();
 		Arrays.fill(this.dynCount, 0);
-		for (int i = 0; i < 4096; i++)
-			this.dynCount[this.dynamism.getFromIndex(i)]++;
+		this.dynCount[0] = 4096;
+		if (data == null)
+			return;
+
+		NibbleArray array = new NibbleArray(data.clone());
+		for (int i = 0; i < 4096; i++) {
+			int d = array.getFromIndex(i);
+			if (d != 0) {
+				this.dynCount[0]--;
+				this.dynCount[d]++;
+			}
+		}
+
+		int count = 4096 - this.dynCount[0];
+		if (count == 0)
+			return;
+
+		if (count > DENSE_DYNAMISM_THRESHOLD) {
+			this.dynamism = array;
+			return;
+		}
+
+		char[] entries = new char[count];
+		for (int i = 0; i < 4096; i++) {
+			int d = array.getFromIndex(i);
+			if (d != 0)
+				entries[this.dynamicSize++] = (char) (i << 4 | d);
+		}
+		this.dynamicEntries = entries;
 	}
 }
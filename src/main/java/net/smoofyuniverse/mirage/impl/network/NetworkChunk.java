@@ -24,20 +24,27 @@ package net.smoofyuniverse.mirage.impl.network;
 
 import co.aikar.timings.Timing;
 import com.flowpowered.math.vector.Vector3i;
+import it.unimi.dsi.fastutil.ints.IntList;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import net.smoofyuniverse.mirage.Mirage;
 import net.smoofyuniverse.mirage.MirageTimings;
 import net.smoofyuniverse.mirage.api.modifier.ConfiguredModifier;
+import net.smoofyuniverse.mirage.api.modifier.PointOperation;
 import net.smoofyuniverse.mirage.api.volume.ChunkView;
+import net.smoofyuniverse.mirage.api.volume.SectionView;
+import net.smoofyuniverse.mirage.config.world.WorldConfig;
 import net.smoofyuniverse.mirage.impl.internal.InternalBlockContainer;
-import net.smoofyuniverse.mirage.impl.internal.InternalBlockState;
 import net.smoofyuniverse.mirage.impl.internal.InternalChunk;
+import net.smoofyuniverse.mirage.impl.network.async.ObfuscationPool;
+import net.smoofyuniverse.mirage.impl.network.async.ObfuscationTask;
 import net.smoofyuniverse.mirage.impl.network.cache.BlockContainerSnapshot;
 import net.smoofyuniverse.mirage.impl.network.cache.ChunkSnapshot;
 import net.smoofyuniverse.mirage.impl.network.change.ChunkChangeListener;
+import net.smoofyuniverse.mirage.impl.network.change.UpdateQueue;
 import net.smoofyuniverse.mirage.impl.network.dynamic.DynamicChunk;
+import net.smoofyuniverse.mirage.util.FastRandom;
 import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.block.BlockType;
 import org.spongepowered.api.block.BlockTypes;
@@ -58,10 +65,16 @@ import org.spongepowered.common.world.extent.worker.SpongeMutableBlockVolumeWork
 import org.spongepowered.common.world.schematic.GlobalPalette;
 import org.spongepowered.common.world.storage.SpongeChunkLayout;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 import static net.smoofyuniverse.mirage.util.MathUtil.*;
 
@@ -70,6 +83,10 @@ import static net.smoofyuniverse.mirage.util.MathUtil.*;
  */
 public class NetworkChunk implements ChunkView {
 	public static final int maxDynamismDistance2 = squared(160);
+	public static final int EAST = 0, WEST = 1, SOUTH = 2, NORTH = 3;
+
+	private static final int[] NEIGHBOR_X = {1, -1, 0, 0}, NEIGHBOR_Z = {0, 0, 1, -1};
+	private static final long X_MIN = 0x0001_0001_0001_0001L, X_MAX = X_MIN << 15;
 
 	private final InternalChunk chunk;
 
@@ -80,9 +97,16 @@ public class NetworkChunk implements ChunkView {
 	private final long seed;
 
 	private final NetworkBlockContainer[] containers = new NetworkBlockContainer[16];
-	private final Random random = new Random();
+	private final NetworkChunk[] neighbors = new NetworkChunk[4];
+	private final long[][] neighborBorders;
+	private final boolean snapshot;
 	private State state = State.DEOBFUSCATED;
 	private ChunkChangeListener listener;
+	private ObfuscationTask task;
+	private int revision;
+	private long[] borders;
+	private UpdateQueue pendingUpdates;
+	private int pendingSections;
 
 	public NetworkChunk(InternalChunk chunk, NetworkWorld world) {
 		this.chunk = chunk;
@@ -93,14 +117,158 @@ public class NetworkChunk implements ChunkView {
 		this.dynamismEnabled = world.isDynamismEnabled();
 		this.x = this.position.getX();
 		this.z = this.position.getZ();
+		this.neighborBorders = null;
+		this.snapshot = false;
 
 		long wSeed = world.getConfig().seed;
-		this.random.setSeed(wSeed);
-		long k = this.random.nextLong() / 2L * 2L + 1L;
-		long l = this.random.nextLong() / 2L * 2L + 1L;
+		Random r = new Random(wSeed);
+		long k = r.nextLong() / 2L * 2L + 1L;
+		long l = r.nextLong() / 2L * 2L + 1L;
 		this.seed = (long) this.x * k + (long) this.z * l ^ wSeed;
 	}
 
+	/**
+	 * Creates a detached copy of the given chunk.
+	 * Only the opacity of the border planes of the neighbors is copied since exposure checks are the only reads outside of the chunk.
+	 *
+	 * @param source The chunk to copy
+	 */
+	private NetworkChunk(NetworkChunk source) {
+		this.chunk = source.chunk;
+		this.world = source.world;
+		this.position = source.position;
+		this.blockMin = source.blockMin;
+		this.blockMax = source.blockMax;
+		this.dynamismEnabled = source.dynamismEnabled;
+		this.x = source.x;
+		this.z = source.z;
+		this.seed = source.seed;
+		this.snapshot = true;
+
+		this.neighborBorders = new long[4][];
+		for (int i = 0; i < 4; i++) {
+			NetworkChunk c = source.neighbors[i];
+			if (c != null)
+				this.neighborBorders[i] = getBorderOpacity(c, i);
+		}
+
+		for (int i = 0; i < 16; i++) {
+			NetworkBlockContainer c = source.containers[i];
+			if (c != null)
+				this.containers[i] = c.copy();
+		}
+	}
+
+	/**
+	 * Creates a detached copy of this chunk and of the border planes of its neighbors.
+	 * The copy can be modified from any thread without affecting this chunk.
+	 *
+	 * @return The snapshot
+	 */
+	public NetworkChunk createSnapshot() {
+		return new NetworkChunk(this);
+	}
+
+	/**
+	 * @param c         The neighbor chunk
+	 * @param direction The direction of the neighbor
+	 * @return A mask where the bit (y << 4 | i) is set if the block of the neighbor along the border is opaque
+	 */
+	private static long[] getBorderOpacity(NetworkChunk c, int direction) {
+		boolean alongZ = direction == EAST || direction == WEST;
+		int edge = direction == EAST || direction == SOUTH ? 0 : 15;
+
+		long[] border = new long[64];
+		for (int y = 0; y < 256; y++) {
+			for (int i = 0; i < 16; i++) {
+				if (alongZ ? c.isOpaque(edge, y, i) : c.isOpaque(i, y, edge)) {
+					int bit = y << 4 | i;
+					border[bit >> 6] |= 1L << (bit & 63);
+				}
+			}
+		}
+		return border;
+	}
+
+	/**
+	 * Checks the opacity of a block of the neighbor chunk along the border.
+	 * A missing neighbor is considered transparent.
+	 *
+	 * @param direction The direction of the neighbor
+	 * @param y         The Y position
+	 * @param i         The Z position for east and west, the X position for south and north
+	 */
+	private boolean isBorderOpaque(int direction, int y, int i) {
+		if (this.snapshot) {
+			long[] border = this.neighborBorders[direction];
+			int bit = y << 4 | i;
+			return border != null && (border[bit >> 6] >>> (bit & 63) & 1L) != 0;
+		}
+
+		NetworkChunk c = this.neighbors[direction];
+		if (c == null)
+			return false;
+
+		int edge = direction == EAST || direction == SOUTH ? 0 : 15;
+		return direction == EAST || direction == WEST ? c.isOpaque(edge, y, i) : c.isOpaque(i, y, edge);
+	}
+
+	public boolean isSnapshot() {
+		return this.snapshot;
+	}
+
+	/**
+	 * Links this chunk with its loaded neighbors.
+	 * Called when the chunk is loaded, once its cache has been read if needed.
+	 */
+	public void onLoad() {
+		this.world.removePrefetch(this.x, this.z);
+
+		for (int i = 0; i < 4; i++) {
+			NetworkChunk c = this.world.getChunkPassively(this.x + NEIGHBOR_X[i], this.z + NEIGHBOR_Z[i]);
+			this.neighbors[i] = c;
+			if (c != null) {
+				c.neighbors[i ^ 1] = this;
+
+				// Wakes up neighbors waiting for this chunk
+				if (c.state == State.OBFUSCATION_REQUESTED && c.task == null && c.areNeighborsLoaded())
+					this.world.addPendingObfuscation(c);
+			}
+		}
+	}
+
+	/**
+	 * Unlinks this chunk from its neighbors.
+	 * Called when the chunk is unloaded.
+	 */
+	public void onUnload() {
+		for (int i = 0; i < 4; i++) {
+			NetworkChunk c = this.neighbors[i];
+			if (c != null) {
+				if (c.neighbors[i ^ 1] == this)
+					c.neighbors[i ^ 1] = null;
+				this.neighbors[i] = null;
+			}
+		}
+
+		this.pendingUpdates = null;
+		this.pendingSections = 0;
+		cancelTask();
+		this.world.removePendingObfuscation(this);
+	}
+
+	/**
+	 * @return A number incremented each time a block of the real chunk is modified
+	 */
+	public int getRevision() {
+		int revision = this.revision;
+		for (NetworkBlockContainer container : this.containers) {
+			if (container != null)
+				revision += container.getRevision();
+		}
+		return revision;
+	}
+
 	public void captureContainer(ExtendedBlockStorage storage) {
 		if (storage != null)
 			captureContainer(((InternalBlockContainer) storage.getData()).getNetworkBlockContainer());
@@ -115,10 +283,14 @@ public class NetworkChunk implements ChunkView {
 		if (old == container)
 			return;
 
-		if (old != null && !old.isEmpty())
-			Mirage.LOGGER.warn("A new container has been captured and will replace a non-empty one (" + this.x + ", " + index + ", " + this.z + ").");
+		if (old != null) {
+			if (!old.isEmpty())
+				Mirage.LOGGER.warn("A new container has been captured and will replace a non-empty one (" + this.x + ", " + index + ", " + this.z + ").");
+			this.revision += old.getRevision();
+		}
 
 		this.containers[index] = container;
+		this.revision++;
 	}
 
 	public void saveToCacheLater() {
@@ -126,7 +298,9 @@ public class NetworkChunk implements ChunkView {
 			long date;
 			if (this.world.useCache()) {
 				ChunkSnapshot chunk = save(new ChunkSnapshot());
-				this.world.addPendingSave(this.x, this.z, chunk);
+				// The chunk stays dirty and will be saved again later
+				if (!this.world.addPendingSave(this.x, this.z, chunk))
+					return;
 				date = chunk.getDate();
 			} else
 				date = System.currentTimeMillis();
@@ -149,10 +323,27 @@ public class NetworkChunk implements ChunkView {
 		return this.state;
 	}
 
+	/**
+	 * @return The seed from which the random generators of this chunk are derived
+	 */
+	long getSeed() {
+		return this.seed;
+	}
+
 	public boolean shouldSave() {
 		return this.state == State.OBFUSCATED && isDirty();
 	}
 
+	/**
+	 * Drops the dense copies of the sections that only differ from the real chunk in few positions.
+	 */
+	private void compactContainers() {
+		for (NetworkBlockContainer container : this.containers) {
+			if (container != null)
+				container.compact();
+		}
+	}
+
 	private void clearDirty() {
 		for (NetworkBlockContainer container : this.containers) {
 			if (container != null)
@@ -168,22 +359,6 @@ public class NetworkChunk implements ChunkView {
 		return false;
 	}
 
-	public void saveToCacheNow() {
-		if (shouldSave()) {
-			long date;
-			if (this.world.useCache()) {
-				ChunkSnapshot chunk = save(new ChunkSnapshot());
-				this.world.removePendingSave(this.x, this.z);
-				this.world.saveToCache(this.x, this.z, chunk);
-				date = chunk.getDate();
-			} else
-				date = System.currentTimeMillis();
-			this.chunk.setValidCacheDate(date);
-			((Chunk) this.chunk).markDirty();
-			clearDirty();
-		}
-	}
-
 	public ChunkSnapshot save(ChunkSnapshot out) {
 		List<BlockContainerSnapshot> list = new ArrayList<>(this.containers.length);
 		for (NetworkBlockContainer container : this.containers) {
@@ -205,7 +380,7 @@ public class NetworkChunk implements ChunkView {
 				this.world.removePendingSave(this.x, this.z);
 				load(chunk);
 
-				this.state = State.OBFUSCATED;
+				setState(State.OBFUSCATED);
 				clearDirty();
 			}
 		}
@@ -239,40 +414,420 @@ public class NetworkChunk implements ChunkView {
 		if (this.state == State.OBFUSCATED)
 			return;
 
+		cancelTask();
 		this.chunk.captureContainers();
 
 		MirageTimings.OBFUSCATION.startTiming();
 
-		boolean requireNeighbors = false;
-		for (ConfiguredModifier mod : this.world.getConfig().modifiers) {
-			if (mod.modifier.requireNeighborsLoaded()) {
-				requireNeighbors = true;
-				break;
+		if (requireNeighborsLoaded() && !areNeighborsLoaded()) {
+			setState(State.OBFUSCATION_REQUESTED);
+		} else {
+			applyModifiers(true);
+			compactContainers();
+			setState(State.OBFUSCATED);
+		}
+
+		MirageTimings.OBFUSCATION.stopTiming();
+	}
+
+	/**
+	 * Obfuscates this chunk on a worker thread if possible, otherwise obfuscates it immediately.
+	 * This method must be called again until the chunk is obfuscated in order to publish the result of the worker thread.
+	 */
+	public void obfuscateLater() {
+		if (this.state == State.OBFUSCATED)
+			return;
+
+		if (this.task != null) {
+			if (!this.task.isDone())
+				return;
+
+			ObfuscationTask task = this.task;
+			this.task = null;
+
+			if (!task.isStale()) {
+				NetworkChunk snapshot;
+				try {
+					snapshot = task.getResult();
+				} catch (Exception e) {
+					Mirage.LOGGER.error("Failed to obfuscate a network chunk on a worker thread", e);
+					obfuscate();
+					return;
+				}
+
+				publish(snapshot);
+				return;
 			}
 		}
 
-		if (requireNeighbors && !areNeighborsLoaded()) {
-			this.state = State.OBFUSCATION_REQUESTED;
-		} else {
-			this.random.setSeed(this.seed);
+		if (!this.world.isAsyncEnabled() || this.listener != null) {
+			obfuscate();
+			return;
+		}
+
+		this.chunk.captureContainers();
+
+		if (requireNeighborsLoaded() && !areNeighborsLoaded()) {
+			setState(State.OBFUSCATION_REQUESTED);
+			return;
+		}
+
+		MirageTimings.OBFUSCATION.startTiming();
+
+		ObfuscationTask task;
+		try {
+			task = new ObfuscationTask(this);
+		} catch (RejectedExecutionException e) {
+			task = null;
+		}
+
+		MirageTimings.OBFUSCATION.stopTiming();
+
+		if (task == null) {
+			obfuscate();
+			return;
+		}
+
+		this.task = task;
+		setState(State.OBFUSCATION_REQUESTED);
+	}
+
+	/**
+	 * Applies all modifiers to this snapshot.
+	 * This method is called from a worker thread.
+	 */
+	public void obfuscateSnapshot() {
+		if (!isSnapshot())
+			throw new IllegalStateException("Not a snapshot");
+
+		applyModifiers(false);
+		setState(State.OBFUSCATED);
+	}
+
+	private void publish(NetworkChunk snapshot) {
+		MirageTimings.OBFUSCATION.startTiming();
+
+		for (int i = 0; i < 16; i++) {
+			NetworkBlockContainer container = snapshot.containers[i];
+			if (container != null)
+				requireContainer(i).copyFrom(container);
+		}
+
+		setState(State.OBFUSCATED);
+
+		MirageTimings.OBFUSCATION.stopTiming();
+	}
+
+	/**
+	 * @return Whether an obfuscation task of this chunk is running on a worker thread
+	 */
+	public boolean isObfuscating() {
+		return this.task != null;
+	}
+
+	/**
+	 * Changes the state of this chunk and keeps the pending set of the world up to date.
+	 * Chunks are pending while their obfuscation task is running on a worker thread.
+	 */
+	private void setState(State state) {
+		this.state = state;
+		if (!this.snapshot) {
+			if (state == State.OBFUSCATION_REQUESTED && this.task != null)
+				this.world.addPendingObfuscation(this);
+			else
+				this.world.removePendingObfuscation(this);
+		}
+	}
+
+	private void cancelTask() {
+		if (this.task != null) {
+			this.task.cancel();
+			this.task = null;
+		}
+	}
+
+	private boolean requireNeighborsLoaded() {
+		for (ConfiguredModifier mod : this.world.getConfig().modifiers) {
+			if (mod.modifier.requireNeighborsLoaded())
+				return true;
+		}
+		return false;
+	}
+
+	private void applyModifiers(boolean timings) {
+		WorldConfig config = this.world.getConfig();
+		for (int[] stage : this.world.getStages()) {
+			int i = stage[0];
+			ConfiguredModifier mod = config.modifiers.get(i);
+
+			if (mod.modifier.isPointwise()) {
+				if (timings)
+					MirageTimings.POINTWISE_MODIFIERS.startTiming();
+
+				int sections = 0;
+				for (int index : stage)
+					sections |= config.modifiers.get(index).sections;
+
+				int mask = sections;
+				forEachSection(s -> this.containers[s] != null && (mask & (1 << s)) != 0, s -> sweepSection(config, stage, s), config.main.parallel);
 
-			for (ConfiguredModifier mod : this.world.getConfig().modifiers) {
-				Timing timing = mod.modifier.getTiming();
+				if (timings)
+					MirageTimings.POINTWISE_MODIFIERS.stopTiming();
+				continue;
+			}
+
+			Timing timing = mod.modifier.getTiming();
+			if (timings)
 				timing.startTiming();
 
+			if (mod.modifier.isSectionLocal()) {
+				modifySections(mod, i, config.main.parallel);
+			} else {
 				try {
-					mod.modifier.modify(this, this.random, mod.config);
+					mod.modifier.modify(this, FastRandom.of(this.seed, i, 16), mod.config);
 				} catch (Exception ex) {
 					Mirage.LOGGER.error("Modifier " + mod.modifier.getId() + " has thrown an exception while modifying a network chunk", ex);
 				}
+			}
 
+			if (timings)
 				timing.stopTiming();
+		}
+	}
+
+	/**
+	 * Applies a section local modifier to each section containing at least one of its targets.
+	 * Each section uses its own generator so the result does not depend on the order of the sections.
+	 */
+	private void modifySections(ConfiguredModifier mod, int index, boolean parallel) {
+		forEachSection(i -> shouldModify(i, mod), i -> modifySection(mod, i, FastRandom.of(this.seed, index, i)), parallel);
+	}
+
+	/**
+	 * Applies an action to each section accepted by the filter.
+	 * In parallel mode, sections only read the border layers of other sections from a frozen copy so the result does not depend on scheduling.
+	 * Sections are only dispatched to the pool from a worker thread, other threads apply them sequentially on the same frozen copy.
+	 */
+	private void forEachSection(IntPredicate filter, IntConsumer action, boolean parallel) {
+		if (!parallel) {
+			for (int i = 0; i < 16; i++) {
+				if (filter.test(i))
+					action.accept(i);
+			}
+			return;
+		}
+
+		freezeBorders();
+
+		try {
+			if (this.listener == null && ObfuscationPool.isWorkerThread()) {
+				List<ForkJoinTask<?>> tasks = new ArrayList<>(16);
+				for (int i = 0; i < 16; i++) {
+					if (filter.test(i)) {
+						int section = i;
+						tasks.add(ForkJoinTask.adapt(() -> action.accept(section)));
+					}
+				}
+
+				ObfuscationPool.invokeAll(tasks);
+				return;
+			}
+
+			for (int i = 0; i < 16; i++) {
+				if (filter.test(i))
+					action.accept(i);
 			}
+		} finally {
+			this.borders = null;
+		}
+	}
 
-			this.state = State.OBFUSCATED;
+	/**
+	 * Applies several pointwise modifiers in a single sweep of a section.
+	 * Each position is read once and goes through the operations of all modifiers before being written.
+	 */
+	private void sweepSection(WorldConfig config, int[] stage, int section) {
+		NetworkBlockContainer c = this.containers[section];
+		NetworkSection view = new NetworkSection(this, c);
+
+		ConfiguredModifier[] mods = new ConfiguredModifier[stage.length];
+		int[] indexes = new int[stage.length];
+		int count = 0;
+		for (int index : stage) {
+			ConfiguredModifier mod = config.modifiers.get(index);
+			if (shouldModify(section, mod)) {
+				mods[count] = mod;
+				indexes[count++] = index;
+			}
 		}
 
-		MirageTimings.OBFUSCATION.stopTiming();
+		if (count == 0)
+			return;
+
+		// Fills the palette first so it is not resized once the operations are prepared
+		for (int k = 0; k < count; k++) {
+			for (BlockState b : mods[k].modifier.getReplacements(mods[k].config))
+				view.getOrCreateId(b);
+		}
+
+		PointOperation[] ops = new PointOperation[count];
+		int n = 0;
+		for (int k = 0; k < count; k++) {
+			try {
+				PointOperation op = mods[k].modifier.prepare(view, FastRandom.of(this.seed, indexes[k], section), mods[k].config).orElse(null);
+				if (op != null)
+					ops[n++] = op;
+			} catch (Exception ex) {
+				Mirage.LOGGER.error("Modifier " + mods[k].modifier.getId() + " has thrown an exception while preparing a section of a network chunk", ex);
+			}
+		}
+
+		if (n == 0)
+			return;
+
+		try {
+			for (int i = 0; i < 4096; i++) {
+				int id = c.getId(i), newId = id;
+				for (int k = 0; k < n; k++)
+					newId = ops[k].apply(i, newId);
+				if (newId != id)
+					view.setId(i, newId);
+			}
+		} catch (Exception ex) {
+			Mirage.LOGGER.error("A pointwise modifier has thrown an exception while modifying a section of a network chunk", ex);
+		}
+	}
+
+	/**
+	 * Checks whether a modifier might modify a section, according to its bounds and its targets.
+	 */
+	private boolean shouldModify(int section, ConfiguredModifier mod) {
+		NetworkBlockContainer c = this.containers[section];
+		return c != null && (mod.sections & (1 << section)) != 0 && (mod.targets == null || c.containsAny(mod.targets));
+	}
+
+	private void modifySection(ConfiguredModifier mod, int section, Random r) {
+		try {
+			mod.modifier.modify(new NetworkSection(this, this.containers[section]), r, mod.config);
+		} catch (Exception ex) {
+			Mirage.LOGGER.error("Modifier " + mod.modifier.getId() + " has thrown an exception while modifying a section of a network chunk", ex);
+		}
+	}
+
+	/**
+	 * Copies the opacity of the lowest and highest layers of each section.
+	 */
+	private void freezeBorders() {
+		long[] borders = new long[128];
+		for (int i = 0; i < 16; i++) {
+			NetworkBlockContainer c = this.containers[i];
+			if (c == null)
+				continue;
+
+			for (int j = 0; j < 256; j++) {
+				if (c.isOpaque(j)) {
+					int bit = i << 9 | j;
+					borders[bit >> 6] |= 1L << (bit & 63);
+				}
+				if (c.isOpaque(15 << 8 | j)) {
+					int bit = i << 9 | 256 | j;
+					borders[bit >> 6] |= 1L << (bit & 63);
+				}
+			}
+		}
+		this.borders = borders;
+	}
+
+	/**
+	 * Checks the opacity of a block next to the given one, using the frozen borders if the block belongs to another section.
+	 */
+	private boolean isOpaque(int x, int y, int z, int fromY) {
+		long[] borders = this.borders;
+		if (borders != null && y >> 4 != fromY >> 4) {
+			int bit = (y >> 4) << 9 | ((y & 15) == 15 ? 256 : 0) | z << 4 | x;
+			return (borders[bit >> 6] >>> (bit & 63) & 1L) != 0;
+		}
+		return isOpaque(x, y, z);
+	}
+
+	/**
+	 * Computes the exposure of all blocks of a section at once.
+	 * The bit i of the mask is set if the block at index i is exposed.
+	 * Only the edge planes of the neighbor sections and chunks are read.
+	 *
+	 * @param container The section
+	 * @return The exposure mask
+	 */
+	public long[] getExposureMask(NetworkBlockContainer container) {
+		final int y0 = container.getY();
+		final long[] t = container.getTransparencyMask();
+		final long[] above = getTransparencyLayer(y0 + 16, y0), below = getTransparencyLayer(y0 - 1, y0);
+		final int[] east = getTransparencyBorder(EAST, y0), west = getTransparencyBorder(WEST, y0),
+				south = getTransparencyBorder(SOUTH, y0), north = getTransparencyBorder(NORTH, y0);
+
+		long[] mask = new long[64];
+		for (int w = 0; w < 64; w++) {
+			int y = w >> 2, row = w & 3;
+			long v = t[w];
+
+			// x + 1 and x - 1
+			long exposed = (v >>> 1 & ~X_MAX) | spread(east[y] >>> (row << 2)) << 15;
+			exposed |= (v << 1 & ~X_MIN) | spread(west[y] >>> (row << 2));
+
+			// z + 1 and z - 1
+			exposed |= v >>> 16 | (row == 3 ? south[y] : t[w + 1] & 0xFFFFL) << 48;
+			exposed |= v << 16 | (row == 0 ? north[y] : t[w - 1] >>> 48);
+
+			// y + 1 and y - 1
+			exposed |= y == 15 ? above[row] : t[w + 4];
+			exposed |= y == 0 ? below[row] : t[w - 4];
+
+			mask[w] = exposed;
+		}
+		return mask;
+	}
+
+	private static long spread(int bits) {
+		return (bits & 1L) | (bits & 2L) << 15 | (bits & 4L) << 30 | (bits & 8L) << 45;
+	}
+
+	/**
+	 * @return A mask where the bit (z << 4 | x) is set if the block at the given Y is not opaque
+	 */
+	private long[] getTransparencyLayer(int y, int fromY) {
+		long[] layer = new long[4];
+		if (y < 0 || y > 255) {
+			Arrays.fill(layer, -1L);
+			return layer;
+		}
+
+		for (int i = 0; i < 256; i++) {
+			if (!isOpaque(i & 15, y, i >> 4, fromY))
+				layer[i >> 6] |= 1L << (i & 63);
+		}
+		return layer;
+	}
+
+	/**
+	 * @return For each Y of the section, a mask of the blocks of the neighbor chunk along the border which are not opaque
+	 */
+	private int[] getTransparencyBorder(int direction, int y0) {
+		int[] border = new int[16];
+		for (int y = 0; y < 16; y++) {
+			int bits = 0;
+			for (int i = 0; i < 16; i++) {
+				if (!isBorderOpaque(direction, y0 + y, i))
+					bits |= 1 << i;
+			}
+			border[y] = bits;
+		}
+		return border;
+	}
+
+	@Override
+	public Optional<SectionView> getSection(int index) {
+		NetworkBlockContainer c = this.containers[index];
+		return c == null ? Optional.empty() : Optional.of(new NetworkSection(this, c));
 	}
 
 	@Override
@@ -299,6 +854,8 @@ public class NetworkChunk implements ChunkView {
 
 	@Override
 	public void deobfuscate() {
+		cancelTask();
+
 		if (this.state == State.DEOBFUSCATED)
 			return;
 
@@ -314,7 +871,7 @@ public class NetworkChunk implements ChunkView {
 		if (this.listener != null)
 			this.listener.clearDynamism();
 
-		this.state = State.DEOBFUSCATED;
+		setState(State.DEOBFUSCATED);
 
 		MirageTimings.DEOBFUSCATION.stopTiming();
 	}
@@ -328,6 +885,86 @@ public class NetworkChunk implements ChunkView {
 		obfuscate();
 	}
 
+	/**
+	 * Queues the deobfuscation of an area, clamped to this chunk.
+	 * The area is deobfuscated when pending updates are applied.
+	 *
+	 * @return Whether this chunk had no pending update before
+	 */
+	public boolean deobfuscateAreaLater(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		return addPending(false, minX, minY, minZ, maxX, maxY, maxZ);
+	}
+
+	/**
+	 * Queues the reobfuscation of an area, clamped to this chunk.
+	 * The area is reobfuscated when pending updates are applied.
+	 *
+	 * @return Whether this chunk had no pending update before
+	 */
+	public boolean reobfuscateAreaLater(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		return addPending(true, minX, minY, minZ, maxX, maxY, maxZ);
+	}
+
+	private boolean addPending(boolean reobfuscate, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		boolean first = !hasPendingUpdates();
+		if (this.pendingUpdates == null)
+			this.pendingUpdates = new UpdateQueue();
+
+		int x = this.blockMin.getX(), z = this.blockMin.getZ();
+		this.pendingUpdates.add(reobfuscate, Math.max(minX - x, 0), Math.max(minY, 0), Math.max(minZ - z, 0),
+				Math.min(maxX - x, 15), Math.min(maxY, 255), Math.min(maxZ - z, 15));
+		return first;
+	}
+
+	/**
+	 * Queues the reobfuscation of whole sections.
+	 * The sections are reobfuscated in background, within the time budget of the world.
+	 *
+	 * @param sections The bitmask of the sections to reobfuscate
+	 * @return Whether this chunk had no pending section before
+	 */
+	public boolean reobfuscateSectionsLater(int sections) {
+		boolean first = this.pendingSections == 0;
+		this.pendingSections |= sections;
+		return first;
+	}
+
+	/**
+	 * Reobfuscates the sections queued by {@link #reobfuscateSectionsLater(int)}.
+	 */
+	public void applyPendingSections() {
+		int sections = this.pendingSections;
+		this.pendingSections = 0;
+		if (sections != 0)
+			reobfuscateSections(sections);
+	}
+
+	public boolean hasPendingUpdates() {
+		return this.pendingUpdates != null && !this.pendingUpdates.isEmpty();
+	}
+
+	/**
+	 * Applies the queued deobfuscations and reobfuscations in the order they were received.
+	 * Consecutive overlapping requests of the same kind received during the same tick are only applied once.
+	 */
+	public void applyPendingUpdates() {
+		if (!hasPendingUpdates())
+			return;
+
+		int x = this.blockMin.getX(), z = this.blockMin.getZ();
+		this.pendingUpdates.forEach((reobfuscate, minX, minY, minZ, maxX, maxY, maxZ) -> {
+			if (reobfuscate) {
+				if (this.state == State.OBFUSCATED)
+					reobfuscate(x + minX, minY, z + minZ, x + maxX, maxY, z + maxZ);
+			} else if (this.state != State.DEOBFUSCATED) {
+				MirageTimings.DEOBFUSCATION.startTiming();
+				deobfuscate(x + minX, minY, z + minZ, x + maxX, maxY, z + maxZ);
+				MirageTimings.DEOBFUSCATION.stopTiming();
+			}
+		});
+		this.pendingUpdates.clear();
+	}
+
 	public void collectDynamicPositions(DynamicChunk chunk) {
 		if (!this.dynamismEnabled)
 			return;
@@ -368,12 +1005,27 @@ public class NetworkChunk implements ChunkView {
 	private NetworkBlockContainer requireContainer(int index) {
 		NetworkBlockContainer container = this.containers[index];
 		if (container == null) {
-			this.chunk.requireContainer(index);
-			container = this.containers[index];
+			if (isSnapshot()) {
+				container = new NetworkBlockContainer(null);
+				container.setY(index << 4);
+				this.containers[index] = container;
+			} else {
+				this.chunk.requireContainer(index);
+				container = this.containers[index];
+			}
 		}
 		return container;
 	}
 
+	/**
+	 * @param direction The direction, one of {@link #EAST}, {@link #WEST}, {@link #SOUTH} or {@link #NORTH}
+	 * @return The loaded neighbor chunk in the given direction
+	 */
+	@Nullable
+	public NetworkChunk getNeighbor(int direction) {
+		return this.neighbors[direction];
+	}
+
 	@Override
 	public int getDynamism(int x, int y, int z) {
 		checkBlockPosition(x, y, z);
@@ -392,41 +1044,37 @@ public class NetworkChunk implements ChunkView {
 		z &= 15;
 
 		// y + 1
-		if (y == 255 || !isOpaque(x, y + 1, z))
+		if (y == 255 || !isOpaque(x, y + 1, z, y))
 			return true;
 
 		// y - 1
-		if (y == 0 || !isOpaque(x, y - 1, z))
+		if (y == 0 || !isOpaque(x, y - 1, z, y))
 			return true;
 
 		// x + 1
 		if (x == 15) {
-			NetworkChunk c = this.world.getChunk(this.x + 1, this.z);
-			if (c == null || !c.isOpaque(0, y, z))
+			if (!isBorderOpaque(EAST, y, z))
 				return true;
 		} else if (!isOpaque(x + 1, y, z))
 			return true;
 
 		// x - 1
 		if (x == 0) {
-			NetworkChunk c = this.world.getChunk(this.x - 1, this.z);
-			if (c == null || !c.isOpaque(15, y, z))
+			if (!isBorderOpaque(WEST, y, z))
 				return true;
 		} else if (!isOpaque(x - 1, y, z))
 			return true;
 
 		// z + 1
 		if (z == 15) {
-			NetworkChunk c = this.world.getChunk(this.x, this.z + 1);
-			if (c == null || !c.isOpaque(x, y, 0))
+			if (!isBorderOpaque(SOUTH, y, x))
 				return true;
 		} else if (!isOpaque(x, y, z + 1))
 			return true;
 
 		// z - 1
 		if (z == 0) {
-			NetworkChunk c = this.world.getChunk(this.x, this.z - 1);
-			if (c == null || !c.isOpaque(x, y, 15))
+			if (!isBorderOpaque(NORTH, y, x))
 				return true;
 		} else if (!isOpaque(x, y, z - 1))
 			return true;
@@ -437,7 +1085,7 @@ public class NetworkChunk implements ChunkView {
 	@Override
 	public boolean isOpaque(int x, int y, int z) {
 		NetworkBlockContainer c = this.containers[y >> 4];
-		return c != null && ((InternalBlockState) c.get(x & 15, y & 15, z & 15)).isOpaque();
+		return c != null && c.isOpaque(NetworkBlockContainer.index(x & 15, y & 15, z & 15));
 	}
 
 	@Override
@@ -535,23 +1183,115 @@ public class NetworkChunk implements ChunkView {
 
 	@Override
 	public boolean areNeighborsLoaded() {
-		return this.world.isChunkLoaded(this.x + 1, this.z) && this.world.isChunkLoaded(this.x, this.z + 1) && this.world.isChunkLoaded(this.x - 1, this.z) && this.world.isChunkLoaded(this.x, this.z - 1);
+		if (this.snapshot)
+			return this.neighborBorders[EAST] != null && this.neighborBorders[WEST] != null && this.neighborBorders[SOUTH] != null && this.neighborBorders[NORTH] != null;
+		return this.neighbors[EAST] != null && this.neighbors[WEST] != null && this.neighbors[SOUTH] != null && this.neighbors[NORTH] != null;
 	}
 
-
-
 	protected void reobfuscate(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
 		deobfuscate(minX, minY, minZ, maxX, maxY, maxZ);
-		Vector3i min = new Vector3i(minX, minY, minZ), max = new Vector3i(maxX, maxY, maxZ);
+		modifyArea(new Vector3i(minX, minY, minZ), new Vector3i(maxX, maxY, maxZ));
+	}
+
+	/**
+	 * Deobfuscates the given blocks in a single pass.
+	 * When more blocks than the change buffer can hold are modified, players receive a single section-level refresh.
+	 *
+	 * @param indexes The positions relative to the chunk, as y << 8 | z << 4 | x
+	 */
+	public void deobfuscateBlocks(IntList indexes) {
+		if (this.state == State.DEOBFUSCATED)
+			return;
+
+		int[] array = indexes.toIntArray();
+		Arrays.sort(array);
+
+		int count = 0, sections = 0;
+		NetworkBlockContainer c = null;
+		int section = -1;
+		for (int i : array) {
+			int y = i >> 8;
+			if (y >> 4 != section) {
+				section = y >> 4;
+				c = this.containers[section];
+			}
+
+			if (c != null && c.deobfuscate(null, i & 15, y & 15, i >> 4 & 15)) {
+				array[count++] = i;
+				sections |= 1 << section;
+			}
+		}
+
+		if (this.listener == null || count == 0)
+			return;
+
+		for (int k = 0; k < count; k++) {
+			int i = array[k];
+			this.listener.updateDynamism(i & 15, i >> 8, i >> 4 & 15, 0);
+		}
+
+		if (count > 64) {
+			this.listener.addSectionChanges(sections);
+		} else {
+			for (int k = 0; k < count; k++) {
+				int i = array[k];
+				this.listener.addChange(i & 15, i >> 8, i >> 4 & 15);
+			}
+		}
+	}
 
+	/**
+	 * Reobfuscates whole sections of this chunk and sends them to players as a single refresh.
+	 * Used after bulk edits, when reobfuscating around each changed block would be slower.
+	 *
+	 * @param sections The bitmask of the sections to reobfuscate
+	 */
+	public void reobfuscateSections(int sections) {
+		if (this.state != State.OBFUSCATED)
+			return;
+
+		ChunkChangeListener listener = this.listener;
+		this.listener = null;
+
+		int changed = 0;
+		try {
+			for (int i = 0; i < 16; i++) {
+				NetworkBlockContainer c = this.containers[i];
+				if (c == null || (sections & (1 << i)) == 0)
+					continue;
+
+				c.deobfuscate(null);
+				c.clearDynamism();
+				modifyArea(new Vector3i(this.blockMin.getX(), i << 4, this.blockMin.getZ()), new Vector3i(this.blockMax.getX(), i << 4 | 15, this.blockMax.getZ()));
+				c.compact();
+				changed |= 1 << i;
+			}
+		} finally {
+			this.listener = listener;
+		}
+
+		if (listener != null && changed != 0) {
+			listener.addSectionChanges(changed);
+			// Dynamic positions of the sections have been replaced
+			if (this.dynamismEnabled)
+				listener.reloadDynamism();
+		}
+	}
+
+	private void modifyArea(Vector3i min, Vector3i max) {
 		MirageTimings.REOBFUSCATION.startTiming();
 
-		for (ConfiguredModifier mod : this.world.getConfig().modifiers) {
+		List<ConfiguredModifier> mods = this.world.getConfig().modifiers;
+		for (int i = 0; i < mods.size(); i++) {
+			ConfiguredModifier mod = mods.get(i);
+			if (!mod.intersects(min.getY(), max.getY()))
+				continue;
+
 			Timing timing = mod.modifier.getTiming();
 			timing.startTiming();
 
 			try {
-				mod.modifier.modify(this, min, max, this.random, mod.config);
+				mod.modifier.modify(this, min, max, FastRandom.of(this.seed, i, min.getY() >> 4), mod.config);
 			} catch (Exception ex) {
 				Mirage.LOGGER.error("Modifier " + mod.modifier.getId() + " has thrown an exception while (re)modifying a part of a network chunk", ex);
 			}
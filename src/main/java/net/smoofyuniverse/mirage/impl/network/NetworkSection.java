@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network;
+
+import net.minecraft.block.state.IBlockState;
+import net.smoofyuniverse.mirage.api.volume.SectionView;
+import net.smoofyuniverse.mirage.impl.network.change.ChunkChangeListener;
+import org.spongepowered.api.block.BlockState;
+
+import java.util.Arrays;
+
+public class NetworkSection implements SectionView {
+	private final NetworkChunk chunk;
+	private final NetworkBlockContainer container;
+	private final ChunkChangeListener listener;
+	private final int minY;
+	private long[] exposure;
+
+	public NetworkSection(NetworkChunk chunk, NetworkBlockContainer container) {
+		this.chunk = chunk;
+		this.container = container;
+		this.listener = chunk.getListener().orElse(null);
+		this.minY = container.getY();
+	}
+
+	@Override
+	public NetworkChunk getChunk() {
+		return this.chunk;
+	}
+
+	@Override
+	public int getMinY() {
+		return this.minY;
+	}
+
+	@Override
+	public int getPaletteSize() {
+		return this.container.getPaletteSize();
+	}
+
+	@Override
+	public BlockState getPaletteEntry(int id) {
+		return (BlockState) this.container.getPaletteEntry(id);
+	}
+
+	@Override
+	public int getOrCreateId(BlockState state) {
+		return this.container.idFor((IBlockState) state);
+	}
+
+	@Override
+	public boolean[] getOpacityTable() {
+		return Arrays.copyOf(this.container.getOpacityTable(), this.container.getPaletteSize());
+	}
+
+	@Override
+	public long[] getExposureMask() {
+		if (this.exposure == null)
+			this.exposure = this.chunk.getExposureMask(this.container);
+		return this.exposure;
+	}
+
+	@Override
+	public int getId(int index) {
+		return this.container.getId(index);
+	}
+
+	@Override
+	public void setId(int index, int id) {
+		if (this.container.setId(index, id) && this.listener != null)
+			this.listener.addChange(index & 15, this.minY + (index >> 8), index >> 4 & 15);
+	}
+}
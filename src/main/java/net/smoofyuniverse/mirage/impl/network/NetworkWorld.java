@@ -25,8 +25,9 @@ package net.smoofyuniverse.mirage.impl.network;
 import co.aikar.timings.Timing;
 import com.flowpowered.math.vector.Vector3i;
 import com.google.common.collect.ImmutableList;
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.*;
 import net.smoofyuniverse.mirage.Mirage;
 import net.smoofyuniverse.mirage.MirageTimings;
 import net.smoofyuniverse.mirage.api.cache.Signature;
@@ -34,12 +35,16 @@ import net.smoofyuniverse.mirage.api.modifier.ConfiguredModifier;
 import net.smoofyuniverse.mirage.api.volume.ChunkView;
 import net.smoofyuniverse.mirage.api.volume.ChunkView.State;
 import net.smoofyuniverse.mirage.api.volume.WorldView;
+import net.smoofyuniverse.mirage.config.world.DeobfuscationConfig;
 import net.smoofyuniverse.mirage.config.world.MainConfig;
 import net.smoofyuniverse.mirage.config.world.WorldConfig;
 import net.smoofyuniverse.mirage.impl.internal.InternalChunk;
 import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
+import net.smoofyuniverse.mirage.impl.network.async.CacheExecutor;
 import net.smoofyuniverse.mirage.impl.network.cache.ChunkSnapshot;
 import net.smoofyuniverse.mirage.impl.network.cache.NetworkRegionCache;
+import net.smoofyuniverse.mirage.util.FastRandom;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.block.BlockType;
 import org.spongepowered.api.block.BlockTypes;
@@ -52,7 +57,6 @@ import org.spongepowered.api.world.extent.StorageType;
 import org.spongepowered.api.world.extent.UnmodifiableBlockVolume;
 import org.spongepowered.api.world.extent.worker.MutableBlockVolumeWorker;
 import org.spongepowered.api.world.storage.WorldProperties;
-import org.spongepowered.common.SpongeImpl;
 import org.spongepowered.common.util.VecHelper;
 import org.spongepowered.common.util.gen.ArrayImmutableBlockBuffer;
 import org.spongepowered.common.util.gen.ArrayMutableBlockBuffer;
@@ -67,7 +71,9 @@ import javax.annotation.Nullable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
@@ -77,16 +83,22 @@ import static net.smoofyuniverse.mirage.impl.network.NetworkChunk.asLong;
  * Represents the world viewed for the network (akka online players)
  */
 public class NetworkWorld implements WorldView {
+	private static final int MAX_PENDING_SAVES = 1024, MAX_PREFETCHES = 1024;
+
 	private final Long2ObjectMap<ChunkSnapshot> chunksToSave = new Long2ObjectOpenHashMap<>();
+	private final Long2ObjectMap<CompletableFuture<ChunkSnapshot>> prefetches = new Long2ObjectOpenHashMap<>();
 	private final Vector3i blockMin, blockMax, blockSize;
 	private final InternalWorld world;
 
 	private NetworkRegionCache cache;
 	private WorldConfig config;
 	private Signature signature;
-	private boolean enabled, dynamismEnabled;
-
-	private final Random random = new Random();
+	private boolean enabled, dynamismEnabled, asyncEnabled;
+	private List<int[]> stages = ImmutableList.of();
+	private final List<NetworkChunk> pendingChunks = new ArrayList<>();
+	private final Set<NetworkChunk> pendingObfuscation = new LinkedHashSet<>();
+	private final Deque<NetworkChunk> pendingSections = new ArrayDeque<>();
+	private final ObfuscationScheduler scheduler = new ObfuscationScheduler(this);
 
 	public NetworkWorld(InternalWorld world) {
 		this.world = world;
@@ -111,6 +123,53 @@ public class NetworkWorld implements WorldView {
 
 		this.enabled = this.config.main.enabled;
 		this.dynamismEnabled = this.enabled && this.config.main.dynamism;
+
+		boolean async = this.enabled && this.config.main.async;
+		if (async) {
+			for (ConfiguredModifier mod : this.config.modifiers) {
+				if (!mod.modifier.isAsyncCompatible()) {
+					Mirage.LOGGER.info("Modifier " + mod.modifier.getId() + " is not async compatible. Chunks will be obfuscated on the main thread.");
+					async = false;
+					break;
+				}
+			}
+		}
+		this.asyncEnabled = async;
+		this.stages = this.enabled ? compileStages(this.config.modifiers) : ImmutableList.of();
+	}
+
+	/**
+	 * Groups consecutive pointwise modifiers into stages applied in a single sweep.
+	 * Other modifiers are alone in their stage.
+	 *
+	 * @param modifiers The modifiers
+	 * @return The indexes of the modifiers of each stage
+	 */
+	private static List<int[]> compileStages(List<ConfiguredModifier> modifiers) {
+		ImmutableList.Builder<int[]> stages = ImmutableList.builder();
+		int start = -1;
+		for (int i = 0; i < modifiers.size(); i++) {
+			if (modifiers.get(i).modifier.isPointwise()) {
+				if (start == -1)
+					start = i;
+			} else {
+				if (start != -1) {
+					stages.add(IntStream.range(start, i).toArray());
+					start = -1;
+				}
+				stages.add(new int[]{i});
+			}
+		}
+		if (start != -1)
+			stages.add(IntStream.range(start, modifiers.size()).toArray());
+		return stages.build();
+	}
+
+	/**
+	 * @return The execution plan of the modifiers
+	 */
+	public List<int[]> getStages() {
+		return this.stages;
 	}
 
 	private void _loadConfig() {
@@ -156,7 +215,7 @@ public class NetworkWorld implements WorldView {
 				this.cache.load();
 				seed = this.cache.getSeed();
 
-				b = Signature.builder().append(seed).append(main.dynamism);
+				b = Signature.builder().append(seed).append(main.dynamism).append(main.parallel);
 				for (ConfiguredModifier mod : modifiers)
 					mod.modifier.appendSignature(b, mod.config);
 				this.signature = b.build();
@@ -177,17 +236,43 @@ public class NetworkWorld implements WorldView {
 		return this.enabled;
 	}
 
+	/**
+	 * @return Whether chunks can be obfuscated on worker threads
+	 */
+	public boolean isAsyncEnabled() {
+		return this.asyncEnabled;
+	}
+
 	public boolean useCache() {
 		return this.cache != null;
 	}
 
-	public void addPendingSave(int x, int z, ChunkSnapshot chunk) {
+	/**
+	 * Queues a snapshot to be written to the cache in background.
+	 * Only the latest snapshot of each chunk is written.
+	 * The snapshot is dropped if too many snapshots of other chunks are already queued.
+	 *
+	 * @return Whether the snapshot has been queued
+	 */
+	public boolean addPendingSave(int x, int z, ChunkSnapshot chunk) {
 		if (this.cache == null)
-			return;
+			return false;
 
+		long pos = asLong(x, z);
 		synchronized (this.chunksToSave) {
-			this.chunksToSave.put(asLong(x, z), chunk);
+			if (this.chunksToSave.containsKey(pos)) {
+				// A write is already scheduled for this chunk
+				this.chunksToSave.put(pos, chunk);
+				return true;
+			}
+
+			if (this.chunksToSave.size() >= MAX_PENDING_SAVES)
+				return false;
+			this.chunksToSave.put(pos, chunk);
 		}
+
+		CacheExecutor.execute(() -> savePendingChunk(x, z));
+		return true;
 	}
 
 	public void removePendingSave(int x, int z) {
@@ -199,52 +284,99 @@ public class NetworkWorld implements WorldView {
 		}
 	}
 
-	public void savePendingChunk(int x, int z) {
-		if (this.cache == null)
-			return;
-
+	/**
+	 * Writes the queued snapshot of a chunk.
+	 * Called from the cache thread.
+	 */
+	private void savePendingChunk(int x, int z) {
 		ChunkSnapshot chunk;
 		synchronized (this.chunksToSave) {
 			chunk = this.chunksToSave.remove(asLong(x, z));
 		}
 		if (chunk != null)
-			saveToCache(x, z, chunk);
+			writeToCache(x, z, chunk);
 	}
 
-	public void saveToCache(int x, int z, ChunkSnapshot chunk) {
-		if (this.cache == null)
-			throw new IllegalStateException();
-
-		MirageTimings.WRITING_CACHE.startTimingIfSync();
-
+	private void writeToCache(int x, int z, ChunkSnapshot chunk) {
 		try (DataOutputStream out = this.cache.getChunkOutputStream(x, z)) {
 			this.signature.write(out);
 			chunk.write(out);
 		} catch (Exception e) {
 			Mirage.LOGGER.warn("Failed to save chunk data " + x + " " + z + " to cache in world " + this.world.getName() + ".", e);
 		}
+	}
+
+	/**
+	 * Starts reading a chunk from the cache before it is loaded.
+	 * The result is used by {@link #readFromCache(int, int)} when the chunk is loaded.
+	 */
+	public void prefetchFromCache(int x, int z) {
+		if (this.cache == null)
+			return;
+
+		long pos = asLong(x, z);
+		synchronized (this.prefetches) {
+			if (this.prefetches.size() < MAX_PREFETCHES && !this.prefetches.containsKey(pos))
+				this.prefetches.put(pos, CacheExecutor.submit(() -> _readFromCache(x, z)));
+		}
+	}
 
-		// Fix a sponge issue with Timings
-		if (SpongeImpl.getServer().isCallingFromMinecraftThread())
-			MirageTimings.WRITING_CACHE.stopTimingIfSync();
+	/**
+	 * Forgets the prefetched data of a chunk which is loaded and does not need it.
+	 */
+	public void removePrefetch(int x, int z) {
+		if (this.cache == null)
+			return;
+
+		synchronized (this.prefetches) {
+			this.prefetches.remove(asLong(x, z));
+		}
 	}
 
+	/**
+	 * Reads a chunk from the cache, using the prefetched data if available.
+	 * The main thread never waits for the cache thread: if the read has not completed yet, the cache is skipped
+	 * and the chunk will be obfuscated again.
+	 * Other threads wait for the prefetched read, or for an urgent read if the chunk was not prefetched.
+	 *
+	 * @return The cached data, or null if it is missing, invalid or not read yet
+	 */
 	@Nullable
 	public ChunkSnapshot readFromCache(int x, int z) {
 		if (this.cache == null)
 			throw new IllegalStateException();
 
+		CompletableFuture<ChunkSnapshot> future;
+		synchronized (this.prefetches) {
+			future = this.prefetches.remove(asLong(x, z));
+		}
+
+		if (Sponge.getServer().isMainThread()) {
+			if (future == null || !future.isDone())
+				return null;
+		} else if (future == null)
+			future = CacheExecutor.submit(() -> _readFromCache(x, z));
+
 		MirageTimings.READING_CACHE.startTimingIfSync();
 
-		try (DataInputStream in = this.cache.getChunkInputStream(x, z)) {
-			if (in != null && Signature.read(in).equals(this.signature))
-				return new ChunkSnapshot().read(in);
+		try {
+			return future.join();
 		} catch (Exception e) {
 			Mirage.LOGGER.warn("Failed to read chunk data " + x + " " + z + " from cache in world " + this.world.getName() + ".", e);
+			return null;
 		} finally {
 			MirageTimings.READING_CACHE.stopTimingIfSync();
 		}
+	}
 
+	@Nullable
+	private ChunkSnapshot _readFromCache(int x, int z) {
+		try (DataInputStream in = this.cache.getChunkInputStream(x, z)) {
+			if (in != null && Signature.read(in).equals(this.signature))
+				return new ChunkSnapshot().read(in);
+		} catch (Exception e) {
+			Mirage.LOGGER.warn("Failed to read chunk data " + x + " " + z + " from cache in world " + this.world.getName() + ".", e);
+		}
 		return null;
 	}
 
@@ -363,6 +495,233 @@ public class NetworkWorld implements WorldView {
 		}
 	}
 
+	/**
+	 * Queues the deobfuscation of the blocks around the given position according to the radius set in the configuration.
+	 * Unloaded chunks are ignored.
+	 *
+	 * @param pos    The position
+	 * @param player Use player deobf radius
+	 */
+	public void deobfuscateSurroundingLater(Vector3i pos, boolean player) {
+		queueSurrounding(pos, player, false);
+	}
+
+	/**
+	 * Queues the reobfuscation of the blocks around the given position according to the radius set in the configuration.
+	 * Unloaded chunks are ignored.
+	 *
+	 * @param pos    The position
+	 * @param player Use player reobf radius
+	 */
+	public void reobfuscateSurroundingLater(Vector3i pos, boolean player) {
+		queueSurrounding(pos, player, true);
+	}
+
+	private void queueSurrounding(Vector3i pos, boolean player, boolean reobfuscate) {
+		if (this.enabled)
+			queueSurrounding(pos, player, reobfuscate, null);
+	}
+
+	private void queueSurrounding(Vector3i pos, boolean player, boolean reobfuscate, @Nullable Long2IntMap bulkChunks) {
+		DeobfuscationConfig.Immutable cfg = this.config.main.deobf;
+		int radius = player ? cfg.playerRadius : cfg.naturalRadius;
+		int minX = pos.getX() - radius, minY = pos.getY() - radius, minZ = pos.getZ() - radius,
+				maxX = pos.getX() + radius, maxY = pos.getY() + radius, maxZ = pos.getZ() + radius;
+
+		for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+			for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+				if (bulkChunks != null) {
+					long key = asLong(chunkX, chunkZ);
+					if (bulkChunks.containsKey(key)) {
+						// The whole sections will be reobfuscated later
+						int sections = 0;
+						for (int s = max(minY, 0) >> 4; s <= min(maxY, 255) >> 4; s++)
+							sections |= 1 << s;
+						bulkChunks.put(key, bulkChunks.get(key) | sections);
+						continue;
+					}
+				}
+
+				NetworkChunk chunk = getChunk(chunkX, chunkZ);
+				if (chunk == null)
+					continue;
+
+				boolean first = reobfuscate ? chunk.reobfuscateAreaLater(minX, minY, minZ, maxX, maxY, maxZ)
+						: chunk.deobfuscateAreaLater(minX, minY, minZ, maxX, maxY, maxZ);
+				if (first)
+					this.pendingChunks.add(chunk);
+			}
+		}
+	}
+
+	public ObfuscationScheduler getScheduler() {
+		return this.scheduler;
+	}
+
+	void addPendingObfuscation(NetworkChunk chunk) {
+		this.pendingObfuscation.add(chunk);
+	}
+
+	void removePendingObfuscation(NetworkChunk chunk) {
+		this.pendingObfuscation.remove(chunk);
+	}
+
+	/**
+	 * Continues the obfuscation of the chunks waiting for a worker thread or for which all neighbors just got loaded.
+	 * Called every tick, only pending chunks are visited.
+	 */
+	public void updatePendingObfuscation() {
+		if (this.pendingObfuscation.isEmpty())
+			return;
+
+		for (NetworkChunk chunk : this.pendingObfuscation.toArray(new NetworkChunk[0]))
+			chunk.obfuscateLater();
+	}
+
+	/**
+	 * Deobfuscates the blocks adjacent to the given blocks, excluding the given blocks themselves.
+	 * Used after explosions, positions are grouped by chunk so that each chunk is only looked up once.
+	 *
+	 * @param blocks The positions packed with {@link #packBlock(int, int, int)}
+	 */
+	public void deobfuscateShell(LongSet blocks) {
+		if (!this.enabled || blocks.isEmpty())
+			return;
+
+		LongSet shell = new LongOpenHashSet();
+		LongIterator it = blocks.iterator();
+		while (it.hasNext()) {
+			long pos = it.nextLong();
+			int x = unpackX(pos), y = unpackY(pos), z = unpackZ(pos);
+			addShell(blocks, shell, x + 1, y, z);
+			addShell(blocks, shell, x - 1, y, z);
+			addShell(blocks, shell, x, y + 1, z);
+			addShell(blocks, shell, x, y - 1, z);
+			addShell(blocks, shell, x, y, z + 1);
+			addShell(blocks, shell, x, y, z - 1);
+		}
+
+		Long2ObjectMap<IntList> chunks = new Long2ObjectOpenHashMap<>();
+		it = shell.iterator();
+		while (it.hasNext()) {
+			long pos = it.nextLong();
+			int x = unpackX(pos), y = unpackY(pos), z = unpackZ(pos);
+			long key = asLong(x >> 4, z >> 4);
+
+			IntList list = chunks.get(key);
+			if (list == null) {
+				list = new IntArrayList();
+				chunks.put(key, list);
+			}
+			list.add(y << 8 | (z & 15) << 4 | (x & 15));
+		}
+
+		for (Long2ObjectMap.Entry<IntList> e : chunks.long2ObjectEntrySet()) {
+			long key = e.getLongKey();
+			NetworkChunk chunk = getChunk((int) key, (int) (key >>> 32));
+			if (chunk != null)
+				chunk.deobfuscateBlocks(e.getValue());
+		}
+	}
+
+	private static void addShell(LongSet blocks, LongSet shell, int x, int y, int z) {
+		if (y < 0 || y > 255)
+			return;
+		long pos = packBlock(x, y, z);
+		if (!blocks.contains(pos))
+			shell.add(pos);
+	}
+
+	public static long packBlock(int x, int y, int z) {
+		return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | (y & 0xFFF);
+	}
+
+	private static int unpackX(long pos) {
+		return (int) (pos >> 38);
+	}
+
+	private static int unpackY(long pos) {
+		return (int) (pos & 0xFFF);
+	}
+
+	private static int unpackZ(long pos) {
+		return (int) (pos << 26 >> 38);
+	}
+
+	/**
+	 * Queues the updates caused by the given block changes.
+	 * Chunks in which more blocks than the bulk threshold changed have their affected sections reobfuscated in background,
+	 * the blocks exposed by the changes in these chunks are still deobfuscated immediately.
+	 *
+	 * @param opaque      The positions of blocks that became opaque
+	 * @param transparent The positions of blocks that became transparent
+	 * @param player      Whether the changes were caused by a player
+	 */
+	public void queueBlockChanges(List<Vector3i> opaque, List<Vector3i> transparent, boolean player) {
+		if (!this.enabled)
+			return;
+
+		Long2IntMap bulkChunks = null;
+		int threshold = this.config.main.deobf.bulkThreshold;
+		if (threshold != 0 && opaque.size() + transparent.size() >= threshold) {
+			Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+			for (Vector3i pos : opaque)
+				counts.addTo(asLong(pos.getX() >> 4, pos.getZ() >> 4), 1);
+			for (Vector3i pos : transparent)
+				counts.addTo(asLong(pos.getX() >> 4, pos.getZ() >> 4), 1);
+
+			for (Long2IntMap.Entry e : counts.long2IntEntrySet()) {
+				if (e.getIntValue() >= threshold) {
+					if (bulkChunks == null)
+						bulkChunks = new Long2IntOpenHashMap();
+					bulkChunks.put(e.getLongKey(), 0);
+				}
+			}
+		}
+
+		for (Vector3i pos : opaque)
+			queueSurrounding(pos, player, true, bulkChunks);
+		for (Vector3i pos : transparent)
+			queueSurrounding(pos, player, false, bulkChunks);
+
+		if (bulkChunks != null) {
+			// Blocks exposed by the changes are revealed right away, only the full pass over the sections is deferred
+			LongSet exposed = new LongOpenHashSet();
+			for (Vector3i pos : transparent) {
+				if (bulkChunks.containsKey(asLong(pos.getX() >> 4, pos.getZ() >> 4)))
+					exposed.add(packBlock(pos.getX(), pos.getY(), pos.getZ()));
+			}
+			deobfuscateShell(exposed);
+
+			for (Long2IntMap.Entry e : bulkChunks.long2IntEntrySet()) {
+				long key = e.getLongKey();
+				NetworkChunk chunk = getChunk((int) key, (int) (key >>> 32));
+				if (chunk != null && chunk.reobfuscateSectionsLater(e.getIntValue()))
+					this.pendingSections.add(chunk);
+			}
+		}
+	}
+
+	/**
+	 * Applies the deobfuscations and reobfuscations queued during this tick,
+	 * then reobfuscates the sections queued by bulk edits until the time budget is exhausted.
+	 * Called before the changes are sent to players.
+	 */
+	public void applyPendingUpdates() {
+		if (!this.pendingChunks.isEmpty()) {
+			for (NetworkChunk chunk : this.pendingChunks)
+				chunk.applyPendingUpdates();
+			this.pendingChunks.clear();
+		}
+
+		if (!this.pendingSections.isEmpty()) {
+			long deadline = System.nanoTime() + this.config.main.deobf.bulkBudget * 1000000L;
+			do {
+				this.pendingSections.poll().applyPendingSections();
+			} while (!this.pendingSections.isEmpty() && System.nanoTime() < deadline);
+		}
+	}
+
 	@Override
 	public void reobfuscateArea(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean silentFail) {
 		checkBlockArea(minX, minY, minZ, maxX, maxY, maxZ);
@@ -407,14 +766,22 @@ public class NetworkWorld implements WorldView {
 		deobfuscate(minX, minY, minZ, maxX, maxY, maxZ);
 		Vector3i min = new Vector3i(minX, minY, minZ), max = new Vector3i(maxX, maxY, maxZ);
 
+		// Keyed by the chunk containing the minimum position, like a reobfuscation of that chunk
+		long seed = getChunk(minChunkX, minChunkZ).getSeed();
+
 		MirageTimings.REOBFUSCATION.startTiming();
 
-		for (ConfiguredModifier mod : this.config.modifiers) {
+		List<ConfiguredModifier> mods = this.config.modifiers;
+		for (int i = 0; i < mods.size(); i++) {
+			ConfiguredModifier mod = mods.get(i);
+			if (!mod.intersects(minY, maxY))
+				continue;
+
 			Timing timing = mod.modifier.getTiming();
 			timing.startTiming();
 
 			try {
-				mod.modifier.modify(this, min, max, this.random, mod.config);
+				mod.modifier.modify(this, min, max, FastRandom.of(seed, i, minY >> 4), mod.config);
 			} catch (Exception ex) {
 				Mirage.LOGGER.error("Modifier " + mod.modifier.getId() + " has thrown an exception while (re)modifying a part of a network world", ex);
 			}
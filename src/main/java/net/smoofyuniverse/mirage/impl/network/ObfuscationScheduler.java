@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import net.smoofyuniverse.mirage.Mirage;
+import net.smoofyuniverse.mirage.api.volume.ChunkView.State;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Obfuscates the chunks requested by players within a time budget per tick.
+ * Chunks closest to a watching player are obfuscated first, the others are deferred to the next ticks.
+ */
+public class ObfuscationScheduler {
+	private static final long REPORT_INTERVAL = 60000;
+
+	private final NetworkWorld world;
+	private final Object2DoubleMap<NetworkChunk> requests = new Object2DoubleOpenHashMap<>();
+	private int queueDepth, deferred;
+	private long overruns, lastReport = System.currentTimeMillis(), reportedOverruns;
+
+	public ObfuscationScheduler(NetworkWorld world) {
+		this.world = world;
+	}
+
+	/**
+	 * Requests the obfuscation of a chunk.
+	 * Requests must be renewed every tick until the chunk is obfuscated.
+	 *
+	 * @param chunk    The chunk
+	 * @param distance The squared distance to the closest watching player
+	 */
+	public void request(NetworkChunk chunk, double distance) {
+		if (!this.requests.containsKey(chunk) || distance < this.requests.getDouble(chunk))
+			this.requests.put(chunk, distance);
+	}
+
+	/**
+	 * Obfuscates the requested chunks, closest first, until the budget of this tick is exhausted.
+	 * At least one chunk is processed every tick.
+	 */
+	public void run() {
+		this.queueDepth = this.requests.size();
+		if (this.queueDepth == 0) {
+			this.deferred = 0;
+			return;
+		}
+
+		List<Object2DoubleMap.Entry<NetworkChunk>> entries = new ArrayList<>(this.requests.object2DoubleEntrySet());
+		this.requests.clear();
+		entries.sort(Comparator.comparingDouble(Object2DoubleMap.Entry::getDoubleValue));
+
+		long budget = this.world.getConfig().main.budget * 1000000L;
+		long start = System.nanoTime(), deadline = start + budget;
+
+		int i = 0;
+		for (Object2DoubleMap.Entry<NetworkChunk> e : entries) {
+			if (budget != 0 && i != 0 && System.nanoTime() >= deadline)
+				break;
+
+			NetworkChunk chunk = e.getKey();
+			if (chunk.getState() != State.OBFUSCATED)
+				chunk.obfuscateLater();
+			i++;
+		}
+
+		this.deferred = entries.size() - i;
+		if (budget != 0 && System.nanoTime() - start > budget)
+			this.overruns++;
+
+		report();
+	}
+
+	private void report() {
+		long now = System.currentTimeMillis();
+		if (now - this.lastReport < REPORT_INTERVAL)
+			return;
+
+		long overruns = this.overruns - this.reportedOverruns;
+		if (overruns != 0)
+			Mirage.LOGGER.warn("Obfuscation of world " + this.world.getProperties().getWorldName() + " exceeded its budget during " + overruns + " ticks in the last minute, " + this.queueDepth + " chunks were queued in the last tick.");
+
+		this.lastReport = now;
+		this.reportedOverruns = this.overruns;
+	}
+
+	/**
+	 * @return The number of chunks requested during the last tick
+	 */
+	public int getQueueDepth() {
+		return this.queueDepth;
+	}
+
+	/**
+	 * @return The number of chunks deferred to the next tick during the last tick
+	 */
+	public int getDeferred() {
+		return this.deferred;
+	}
+
+	/**
+	 * @return The number of ticks during which the budget was exceeded
+	 */
+	public long getOverruns() {
+		return this.overruns;
+	}
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network;
+
+import it.unimi.dsi.fastutil.longs.*;
+import net.smoofyuniverse.mirage.Mirage;
+import net.smoofyuniverse.mirage.api.volume.ChunkView.State;
+import net.smoofyuniverse.mirage.impl.internal.InternalChunk;
+import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
+import net.smoofyuniverse.mirage.util.IOUtil;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+import ninja.leaping.configurate.loader.ConfigurationLoader;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageReceiver;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static net.smoofyuniverse.mirage.impl.network.NetworkChunk.asLong;
+
+/**
+ * Loads a list of chunks, obfuscates them and saves them in the cache, a few per tick.
+ * Obfuscation runs on worker threads when the world allows it.
+ * Progress is saved to a file so the task can be resumed after a restart.
+ */
+public class PreobfuscationTask {
+	private static final Pattern REGION_FILE = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+	private static final long BUDGET = 10000000L, REPORT_INTERVAL = 10000;
+	private static final int SAVE_INTERVAL = 256, MAX_RUNNING = Runtime.getRuntime().availableProcessors() * 2, PREFETCH_DISTANCE = 64;
+
+	private final UUID worldId;
+	private final int centerX, centerZ, radius;
+	private final boolean regions;
+	private final Path file;
+	private final List<Chunk> loadedChunks = new ArrayList<>();
+	private final Map<NetworkChunk, Integer> running = new LinkedHashMap<>();
+	private final LongSet prefetched = new LongOpenHashSet();
+	private long[] chunks;
+	private MessageReceiver receiver;
+	private int index, prefetchIndex, processed, rowMinX, rowMaxX, rowZ;
+	private long startTime, lastReport;
+	private Task task;
+
+	private PreobfuscationTask(UUID worldId, int centerX, int centerZ, int radius, boolean regions, int index, Path file) {
+		this.worldId = worldId;
+		this.centerX = centerX;
+		this.centerZ = centerZ;
+		this.radius = radius;
+		this.regions = regions;
+		this.index = index;
+		this.file = file;
+	}
+
+	/**
+	 * Creates a task for all chunks in a square around the given center.
+	 *
+	 * @param worldId The world
+	 * @param centerX The X position of the center chunk
+	 * @param centerZ The Z position of the center chunk
+	 * @param radius  The radius in chunks
+	 * @param file    The progress file
+	 * @return The task
+	 */
+	public static PreobfuscationTask square(UUID worldId, int centerX, int centerZ, int radius, Path file) {
+		if (radius < 0)
+			throw new IllegalArgumentException("Negative radius");
+		return new PreobfuscationTask(worldId, centerX, centerZ, radius, false, 0, file);
+	}
+
+	/**
+	 * Creates a task for all chunks saved in the region files of the world.
+	 *
+	 * @param worldId The world
+	 * @param file    The progress file
+	 * @return The task
+	 */
+	public static PreobfuscationTask regions(UUID worldId, Path file) {
+		return new PreobfuscationTask(worldId, 0, 0, 0, true, 0, file);
+	}
+
+	public static Path getFile(Path directory, UUID worldId) {
+		return directory.resolve(worldId + ".conf");
+	}
+
+	/**
+	 * Loads a task saved by {@link #save()}.
+	 *
+	 * @param file The file
+	 * @return The task
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static PreobfuscationTask load(Path file) throws IOException {
+		ConfigurationNode root = IOUtil.createConfigLoader(file).load();
+		return new PreobfuscationTask(UUID.fromString(root.getNode("World").getString()), root.getNode("CenterX").getInt(), root.getNode("CenterZ").getInt(),
+				root.getNode("Radius").getInt(), root.getNode("Regions").getBoolean(), root.getNode("Index").getInt(), file);
+	}
+
+	public void save() throws IOException {
+		ConfigurationLoader<CommentedConfigurationNode> loader = IOUtil.createConfigLoader(this.file);
+		CommentedConfigurationNode root = loader.createEmptyNode();
+		root.getNode("World").setValue(this.worldId.toString());
+		root.getNode("CenterX").setValue(this.centerX);
+		root.getNode("CenterZ").setValue(this.centerZ);
+		root.getNode("Radius").setValue(this.radius);
+		root.getNode("Regions").setValue(this.regions);
+		root.getNode("Index").setValue(getSafeIndex());
+		Files.createDirectories(this.file.getParent());
+		loader.save(root);
+	}
+
+	/**
+	 * Lists the chunks saved in the region files of a world, region per region and row per row.
+	 * Only the location table of each file is read.
+	 *
+	 * @param directory The directory of the world
+	 * @return The positions of the chunks
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static long[] listSavedChunks(Path directory) throws IOException {
+		Path regionDir = directory.resolve("region");
+		if (!Files.isDirectory(regionDir))
+			return new long[0];
+
+		List<int[]> regions = new ArrayList<>();
+		try (DirectoryStream<Path> st = Files.newDirectoryStream(regionDir, "*.mca")) {
+			for (Path p : st) {
+				Matcher m = REGION_FILE.matcher(p.getFileName().toString());
+				if (m.matches())
+					regions.add(new int[]{Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))});
+			}
+		}
+		regions.sort(Comparator.<int[]>comparingInt(r -> r[1]).thenComparingInt(r -> r[0]));
+
+		LongList chunks = new LongArrayList();
+		byte[] header = new byte[4096];
+		for (int[] r : regions) {
+			try (InputStream in = Files.newInputStream(regionDir.resolve("r." + r[0] + "." + r[1] + ".mca"))) {
+				new DataInputStream(in).readFully(header);
+			} catch (IOException e) {
+				// Empty or truncated file
+				continue;
+			}
+
+			for (int i = 0; i < 1024; i++) {
+				int j = i << 2;
+				if ((header[j] | header[j + 1] | header[j + 2] | header[j + 3]) != 0)
+					chunks.add(asLong(r[0] << 5 | (i & 31), r[1] << 5 | (i >> 5)));
+			}
+		}
+		return chunks.toLongArray();
+	}
+
+	private long[] listChunks(World world) throws IOException {
+		if (this.regions)
+			return listSavedChunks(world.getDirectory());
+
+		int size = this.radius * 2 + 1;
+		long[] chunks = new long[size * size];
+		for (int i = 0; i < chunks.length; i++)
+			chunks[i] = asLong(this.centerX - this.radius + i % size, this.centerZ - this.radius + i / size);
+		return chunks;
+	}
+
+	/**
+	 * @return The index from which the task can be resumed without missing the chunks still being obfuscated
+	 */
+	private int getSafeIndex() {
+		int index = this.index;
+		for (int i : this.running.values())
+			index = Math.min(index, i);
+		return index;
+	}
+
+	public UUID getWorldId() {
+		return this.worldId;
+	}
+
+	public int getIndex() {
+		return this.index;
+	}
+
+	public int getTotal() {
+		return this.chunks == null ? 0 : this.chunks.length;
+	}
+
+	public boolean isRunning() {
+		return this.task != null;
+	}
+
+	/**
+	 * Starts or resumes this task.
+	 *
+	 * @param receiver The receiver of progress messages, or null to only log them
+	 */
+	public void start(@Nullable MessageReceiver receiver) {
+		if (this.task != null)
+			throw new IllegalStateException("Already running");
+
+		World world = Sponge.getServer().getWorld(this.worldId).orElseThrow(() -> new IllegalStateException("World not loaded"));
+		if (this.chunks == null) {
+			try {
+				this.chunks = listChunks(world);
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to list chunks", e);
+			}
+		}
+
+		this.receiver = receiver;
+		this.prefetchIndex = this.index;
+		this.processed = 0;
+		this.rowZ = Integer.MIN_VALUE;
+		this.startTime = this.lastReport = System.currentTimeMillis();
+		this.task = Task.builder().execute(this::tick).intervalTicks(1).name("Mirage - Preobfuscation " + this.worldId).submit(Mirage.get());
+		report("Preobfuscation started at " + this.index + "/" + this.chunks.length + " chunks.");
+	}
+
+	public void stop() {
+		if (this.task != null) {
+			this.task.cancel();
+			this.task = null;
+			trySave();
+			this.running.clear();
+			unloadChunks();
+			cancelPrefetches();
+		}
+	}
+
+	private void tick() {
+		World world = Sponge.getServer().getWorld(this.worldId).orElse(null);
+		if (world == null) {
+			report("World unloaded, preobfuscation paused at " + this.index + "/" + this.chunks.length + " chunks.");
+			stop();
+			return;
+		}
+
+		NetworkWorld view = ((InternalWorld) world).getView();
+		if (!view.isEnabled()) {
+			report("Obfuscation is disabled in this world, preobfuscation cancelled.");
+			finish();
+			return;
+		}
+
+		long deadline = System.nanoTime() + BUDGET;
+
+		this.running.keySet().removeIf(this::tryComplete);
+
+		// Reads the cache of the next chunks ahead so that loading them on the main thread does not wait for it
+		int prefetchEnd = Math.min(this.index + PREFETCH_DISTANCE, this.chunks.length);
+		for (this.prefetchIndex = Math.max(this.prefetchIndex, this.index); this.prefetchIndex < prefetchEnd; this.prefetchIndex++) {
+			long pos = this.chunks[this.prefetchIndex];
+			prefetch(world, view, (int) pos, (int) (pos >>> 32));
+		}
+
+		while (this.index < this.chunks.length && this.running.size() < MAX_RUNNING && System.nanoTime() < deadline) {
+			long pos = this.chunks[this.index];
+			int x = (int) pos, z = (int) (pos >>> 32);
+
+			if (z != this.rowZ || x < this.rowMinX || x > this.rowMaxX) {
+				startRow();
+				unloadChunks();
+				trimPrefetches(view);
+			}
+
+			process(world, x, z, this.index);
+			this.index++;
+
+			if (this.index % SAVE_INTERVAL == 0)
+				trySave();
+		}
+
+		if (this.index >= this.chunks.length && this.running.isEmpty()) {
+			long time = Math.max(System.currentTimeMillis() - this.startTime, 1);
+			report("Preobfuscation completed, " + this.processed + " chunks were obfuscated in " + time / 1000 + "s (" + this.processed * 1000 / time + " chunks/s).");
+			finish();
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		if (now - this.lastReport >= REPORT_INTERVAL) {
+			this.lastReport = now;
+			report("Preobfuscation progress: " + this.index + "/" + this.chunks.length + " chunks (" + this.index * 100L / this.chunks.length + "%), "
+					+ this.processed * 1000 / Math.max(now - this.startTime, 1) + " chunks/s.");
+		}
+	}
+
+	/**
+	 * Finds the bounds of the row of consecutive chunks starting at the current index.
+	 */
+	private void startRow() {
+		long pos = this.chunks[this.index];
+		this.rowZ = (int) (pos >>> 32);
+		this.rowMinX = this.rowMaxX = (int) pos;
+
+		for (int i = this.index + 1; i < this.chunks.length; i++) {
+			pos = this.chunks[i];
+			if ((int) (pos >>> 32) != this.rowZ || (int) pos != this.rowMaxX + 1)
+				break;
+			this.rowMaxX++;
+		}
+	}
+
+	/**
+	 * Starts reading from the cache the given chunk and its neighbors that are not loaded yet.
+	 */
+	private void prefetch(World world, NetworkWorld view, int x, int z) {
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dz = -1; dz <= 1; dz++) {
+				if (!world.getChunk(x + dx, 0, z + dz).isPresent()) {
+					view.prefetchFromCache(x + dx, z + dz);
+					this.prefetched.add(asLong(x + dx, z + dz));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets the prefetched data of the chunks that are neither ahead of the current index nor their neighbors.
+	 * Loaded chunks already consumed their data, the others were not generated and will not be loaded by this task.
+	 */
+	private void trimPrefetches(NetworkWorld view) {
+		if (this.prefetched.isEmpty())
+			return;
+
+		LongSet ahead = new LongOpenHashSet();
+		for (int i = this.index; i < this.prefetchIndex; i++) {
+			long pos = this.chunks[i];
+			int x = (int) pos, z = (int) (pos >>> 32);
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dz = -1; dz <= 1; dz++)
+					ahead.add(asLong(x + dx, z + dz));
+			}
+		}
+
+		LongIterator it = this.prefetched.iterator();
+		while (it.hasNext()) {
+			long pos = it.nextLong();
+			if (!ahead.contains(pos)) {
+				view.removePrefetch((int) pos, (int) (pos >>> 32));
+				it.remove();
+			}
+		}
+	}
+
+	private void cancelPrefetches() {
+		this.prefetchIndex = this.index;
+		World world = Sponge.getServer().getWorld(this.worldId).orElse(null);
+		if (world != null)
+			trimPrefetches(((InternalWorld) world).getView());
+		this.prefetched.clear();
+	}
+
+	private void process(World world, int x, int z, int index) {
+		Chunk chunk = load(world, x, z).orElse(null);
+		if (chunk == null)
+			return;
+
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dz = -1; dz <= 1; dz++) {
+				if (dx != 0 || dz != 0)
+					load(world, x + dx, z + dz);
+			}
+		}
+
+		InternalChunk internalChunk = (InternalChunk) chunk;
+		if (!internalChunk.isViewAvailable())
+			return;
+
+		NetworkChunk netChunk = internalChunk.getView();
+		if (netChunk.getState() == State.OBFUSCATED)
+			return;
+
+		netChunk.obfuscateLater();
+		if (!tryComplete(netChunk))
+			this.running.put(netChunk, index);
+	}
+
+	private boolean tryComplete(NetworkChunk chunk) {
+		switch (chunk.getState()) {
+			case OBFUSCATED:
+				chunk.saveToCacheLater();
+				this.processed++;
+				return true;
+			case OBFUSCATION_REQUESTED:
+				// Gives up chunks waiting for neighbors that have never been generated
+				return !chunk.isObfuscating();
+			default:
+				return true;
+		}
+	}
+
+	private Optional<Chunk> load(World world, int x, int z) {
+		Optional<Chunk> chunk = world.getChunk(x, 0, z);
+		if (chunk.isPresent())
+			return chunk;
+
+		chunk = world.loadChunk(x, 0, z, false);
+		chunk.ifPresent(this.loadedChunks::add);
+		return chunk;
+	}
+
+	/**
+	 * Unloads the chunks loaded by this task that are not needed as neighbors of the current row anymore.
+	 * Chunks still being obfuscated are kept.
+	 */
+	private void unloadChunks() {
+		this.loadedChunks.removeIf(c -> {
+			int x = c.getPosition().getX(), z = c.getPosition().getZ();
+			if (this.task != null && Math.abs(z - this.rowZ) <= 1 && x >= this.rowMinX - 1 && x <= this.rowMaxX + 1)
+				return false;
+			if (isNeeded(x, z))
+				return false;
+			c.unloadChunk();
+			return true;
+		});
+	}
+
+	private boolean isNeeded(int x, int z) {
+		for (NetworkChunk c : this.running.keySet()) {
+			if (Math.abs(c.x - x) <= 1 && Math.abs(c.z - z) <= 1)
+				return true;
+		}
+		return false;
+	}
+
+	private void finish() {
+		if (this.task != null) {
+			this.task.cancel();
+			this.task = null;
+		}
+		this.running.clear();
+		unloadChunks();
+		cancelPrefetches();
+		try {
+			Files.deleteIfExists(this.file);
+		} catch (IOException e) {
+			Mirage.LOGGER.warn("Failed to delete preobfuscation progress: " + this.file, e);
+		}
+	}
+
+	private void trySave() {
+		try {
+			save();
+		} catch (IOException e) {
+			Mirage.LOGGER.warn("Failed to save preobfuscation progress: " + this.file, e);
+		}
+	}
+
+	private void report(String message) {
+		Mirage.LOGGER.info("[" + this.worldId + "] " + message);
+		if (this.receiver != null)
+			this.receiver.sendMessage(Text.of(message));
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network.async;
+
+import net.smoofyuniverse.mirage.Mirage;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The thread reading and writing the network region caches, so disk latency does not stall the threads loading chunks.
+ * Urgent tasks, such as reads of chunks about to be loaded, are executed before the background writes.
+ */
+public class CacheExecutor {
+	private static final AtomicLong sequence = new AtomicLong();
+	private static ThreadPoolExecutor executor;
+
+	private static synchronized ThreadPoolExecutor get() {
+		if (executor == null)
+			executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), CacheExecutor::newThread);
+		return executor;
+	}
+
+	/**
+	 * Submits a task executed before all background writes.
+	 *
+	 * @param task The task
+	 * @return The result of the task
+	 */
+	public static <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		get().execute(new Task(() -> {
+			try {
+				future.complete(task.call());
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		}, true));
+		return future;
+	}
+
+	/**
+	 * Executes a background write, after the tasks submitted before it.
+	 *
+	 * @param task The task
+	 */
+	public static void execute(Runnable task) {
+		get().execute(new Task(task, false));
+	}
+
+	/**
+	 * Executes the remaining tasks then stops the thread.
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+					Mirage.LOGGER.warn("Timed out while writing the remaining chunks to cache.");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+	}
+
+	private static Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, "Mirage Cache I/O");
+		thread.setContextClassLoader(Mirage.class.getClassLoader());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	private static final class Task implements Runnable, Comparable<Task> {
+		private final Runnable action;
+		private final boolean urgent;
+		private final long sequence;
+
+		Task(Runnable action, boolean urgent) {
+			this.action = action;
+			this.urgent = urgent;
+			this.sequence = CacheExecutor.sequence.getAndIncrement();
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.action.run();
+			} catch (Exception e) {
+				Mirage.LOGGER.error("Uncaught exception in cache task", e);
+			}
+		}
+
+		@Override
+		public int compareTo(Task o) {
+			if (this.urgent != o.urgent)
+				return this.urgent ? -1 : 1;
+			return Long.compare(this.sequence, o.sequence);
+		}
+	}
+}
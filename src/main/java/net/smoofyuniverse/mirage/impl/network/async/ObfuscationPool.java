@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network.async;
+
+import net.smoofyuniverse.mirage.Mirage;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The pool of worker threads used to obfuscate chunks outside of the main thread.
+ */
+public class ObfuscationPool {
+	private static volatile ForkJoinPool pool;
+	private static boolean terminated;
+
+	/**
+	 * Gets the pool, creating it if needed.
+	 *
+	 * @return The pool
+	 * @throws RejectedExecutionException if the pool has been shut down
+	 */
+	public static synchronized ForkJoinPool get() {
+		if (terminated)
+			throw new RejectedExecutionException("Obfuscation pool has been shut down");
+		if (pool == null) {
+			int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+			pool = new ForkJoinPool(parallelism, ObfuscationPool::newThread,
+					(t, e) -> Mirage.LOGGER.error("Uncaught exception in thread " + t.getName(), e), true);
+		}
+		return pool;
+	}
+
+	/**
+	 * @return true if the current thread is a worker thread of the pool
+	 */
+	public static boolean isWorkerThread() {
+		ForkJoinPool p = pool;
+		return p != null && ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == p;
+	}
+
+	/**
+	 * Forks all the given tasks in the pool and waits for their completion.
+	 * The current thread helps executing the tasks.
+	 * Other threads must not call this method since they would wait behind unrelated tasks.
+	 *
+	 * @param tasks The tasks
+	 * @throws IllegalStateException if the current thread is not a worker thread of the pool
+	 */
+	public static void invokeAll(Collection<? extends ForkJoinTask<?>> tasks) {
+		if (!isWorkerThread())
+			throw new IllegalStateException("Not a worker thread");
+		ForkJoinTask.invokeAll(tasks);
+	}
+
+	/**
+	 * Shuts down the pool.
+	 * The pool is never recreated, later calls to {@link #get()} are rejected.
+	 */
+	public static synchronized void shutdown() {
+		terminated = true;
+		if (pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+
+	private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("Mirage Obfuscation #" + thread.getPoolIndex());
+		thread.setContextClassLoader(Mirage.class.getClassLoader());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
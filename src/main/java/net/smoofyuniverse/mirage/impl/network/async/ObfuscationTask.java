@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network.async;
+
+import net.smoofyuniverse.mirage.impl.network.NetworkChunk;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * An obfuscation of a snapshot of a chunk and of its neighbors running on a worker thread.
+ */
+public final class ObfuscationTask {
+	private final NetworkChunk chunk, snapshot;
+	private final NetworkChunk[] neighbors = new NetworkChunk[4];
+	private final int[] revisions = new int[5];
+	private final Future<?> future;
+
+	public ObfuscationTask(NetworkChunk chunk) {
+		this.chunk = chunk;
+		this.revisions[0] = chunk.getRevision();
+		for (int i = 0; i < 4; i++) {
+			NetworkChunk c = chunk.getNeighbor(i);
+			this.neighbors[i] = c;
+			this.revisions[i + 1] = c == null ? 0 : c.getRevision();
+		}
+
+		this.snapshot = chunk.createSnapshot();
+		this.future = ObfuscationPool.get().submit(this.snapshot::obfuscateSnapshot);
+	}
+
+	public NetworkChunk getChunk() {
+		return this.chunk;
+	}
+
+	public boolean isDone() {
+		return this.future.isDone();
+	}
+
+	public void cancel() {
+		this.future.cancel(false);
+	}
+
+	/**
+	 * @return Whether the chunk or one of its neighbors has been modified since the snapshot was taken
+	 */
+	public boolean isStale() {
+		if (this.chunk.getRevision() != this.revisions[0])
+			return true;
+
+		for (int i = 0; i < 4; i++) {
+			NetworkChunk c = this.chunk.getNeighbor(i);
+			if (c != this.neighbors[i] || (c != null && c.getRevision() != this.revisions[i + 1]))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Waits if necessary for the obfuscation to complete.
+	 *
+	 * @return The obfuscated snapshot
+	 * @throws ExecutionException if the obfuscation has thrown an exception
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 */
+	public NetworkChunk getResult() throws ExecutionException, InterruptedException {
+		this.future.get();
+		return this.snapshot;
+	}
+}
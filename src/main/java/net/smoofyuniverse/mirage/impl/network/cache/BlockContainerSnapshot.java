@@ -70,12 +70,13 @@ public class BlockContainerSnapshot {
 		this.extension = extension;
 	}
 
+	@Nullable
 	public byte[] getDynamism() {
 		return this.dynamism;
 	}
 
-	public void setDynamism(byte[] dynamism) {
-		if (dynamism == null || dynamism.length != 2048)
+	public void setDynamism(@Nullable byte[] dynamism) {
+		if (dynamism != null && dynamism.length != 2048)
 			throw new IllegalArgumentException();
 		this.dynamism = dynamism;
 	}
@@ -92,7 +93,7 @@ public class BlockContainerSnapshot {
 			out.write(this.extension);
 		}
 
-		if (isEmpty(this.dynamism))
+		if (this.dynamism == null || isEmpty(this.dynamism))
 			out.writeBoolean(false);
 		else {
 			out.writeBoolean(true);
@@ -124,9 +125,11 @@ public class BlockContainerSnapshot {
 		} else
 			this.extension = null;
 
-		this.dynamism = new byte[2048];
-		if (in.readBoolean())
+		if (in.readBoolean()) {
+			this.dynamism = new byte[2048];
 			in.readFully(this.dynamism);
+		} else
+			this.dynamism = null;
 
 		return this;
 	}
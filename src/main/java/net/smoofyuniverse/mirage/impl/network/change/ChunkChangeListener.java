@@ -26,6 +26,8 @@ public interface ChunkChangeListener {
 
 	void addChange(int x, int y, int z);
 
+	void addSectionChanges(int sections);
+
 	void sendChanges();
 
 	void clearChanges();
@@ -34,5 +36,7 @@ public interface ChunkChangeListener {
 
 	void clearDynamism();
 
+	void reloadDynamism();
+
 	void markDirty();
 }
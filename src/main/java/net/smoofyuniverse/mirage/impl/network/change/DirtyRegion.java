@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network.change;
+
+/**
+ * A region of a chunk made of one box per section.
+ * Boxes added to the same section are merged into their union.
+ */
+public class DirtyRegion {
+	private final byte[] bounds = new byte[96];
+	private int sections;
+
+	/**
+	 * Adds a box to this region.
+	 * Coordinates are relative to the chunk.
+	 *
+	 * @param minX The X minimum position
+	 * @param minY The Y minimum position
+	 * @param minZ The Z minimum position
+	 * @param maxX The X maximum position
+	 * @param maxY The Y maximum position
+	 * @param maxZ The Z maximum position
+	 */
+	public void add(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		for (int s = minY >> 4; s <= maxY >> 4; s++) {
+			int sMinY = Math.max(minY - (s << 4), 0), sMaxY = Math.min(maxY - (s << 4), 15);
+			int i = s * 6;
+
+			if ((this.sections & (1 << s)) == 0) {
+				this.sections |= 1 << s;
+				this.bounds[i] = (byte) minX;
+				this.bounds[i + 1] = (byte) sMinY;
+				this.bounds[i + 2] = (byte) minZ;
+				this.bounds[i + 3] = (byte) maxX;
+				this.bounds[i + 4] = (byte) sMaxY;
+				this.bounds[i + 5] = (byte) maxZ;
+			} else {
+				this.bounds[i] = (byte) Math.min(this.bounds[i], minX);
+				this.bounds[i + 1] = (byte) Math.min(this.bounds[i + 1], sMinY);
+				this.bounds[i + 2] = (byte) Math.min(this.bounds[i + 2], minZ);
+				this.bounds[i + 3] = (byte) Math.max(this.bounds[i + 3], maxX);
+				this.bounds[i + 4] = (byte) Math.max(this.bounds[i + 4], sMaxY);
+				this.bounds[i + 5] = (byte) Math.max(this.bounds[i + 5], maxZ);
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return this.sections == 0;
+	}
+
+	public void clear() {
+		this.sections = 0;
+	}
+
+	/**
+	 * Calls the consumer for each box of this region.
+	 * Boxes of consecutive sections sharing the same horizontal bounds and touching each other are merged.
+	 * Coordinates are relative to the chunk.
+	 *
+	 * @param consumer The consumer
+	 */
+	public void forEach(AreaConsumer consumer) {
+		int s = 0;
+		while (s < 16) {
+			if ((this.sections & (1 << s)) == 0) {
+				s++;
+				continue;
+			}
+
+			int i = s * 6, minY = (s << 4) + this.bounds[i + 1], maxY = (s << 4) + this.bounds[i + 4];
+			int next = s + 1;
+			while (next < 16 && maxY == (next << 4) - 1 && (this.sections & (1 << next)) != 0 && sameColumn(i, next * 6) && this.bounds[next * 6 + 1] == 0) {
+				maxY = (next << 4) + this.bounds[next * 6 + 4];
+				next++;
+			}
+
+			consumer.accept(this.bounds[i], minY, this.bounds[i + 2], this.bounds[i + 3], maxY, this.bounds[i + 5]);
+			s = next;
+		}
+	}
+
+	private boolean sameColumn(int i, int j) {
+		return this.bounds[i] == this.bounds[j] && this.bounds[i + 2] == this.bounds[j + 2]
+				&& this.bounds[i + 3] == this.bounds[j + 3] && this.bounds[i + 5] == this.bounds[j + 5];
+	}
+
+	public interface AreaConsumer {
+
+		void accept(int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+	}
+}
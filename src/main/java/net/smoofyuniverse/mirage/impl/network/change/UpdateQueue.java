@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network.change;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The deobfuscations and reobfuscations queued in a chunk during a tick.
+ * Consecutive requests of the same kind are merged into a single region,
+ * requests of different kinds are applied in the order they were received.
+ */
+public class UpdateQueue {
+	private final List<DirtyRegion> regions = new ArrayList<>();
+	private boolean firstReobfuscation;
+
+	/**
+	 * Queues a deobfuscation or a reobfuscation of a box.
+	 * Coordinates are relative to the chunk.
+	 *
+	 * @param reobfuscate true for a reobfuscation, false for a deobfuscation
+	 */
+	public void add(boolean reobfuscate, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		int size = this.regions.size();
+		if (size == 0)
+			this.firstReobfuscation = reobfuscate;
+
+		DirtyRegion region;
+		if (size != 0 && isReobfuscation(size - 1) == reobfuscate) {
+			region = this.regions.get(size - 1);
+		} else {
+			region = new DirtyRegion();
+			this.regions.add(region);
+		}
+		region.add(minX, minY, minZ, maxX, maxY, maxZ);
+	}
+
+	private boolean isReobfuscation(int index) {
+		// Kinds alternate since consecutive requests of the same kind are merged
+		return this.firstReobfuscation ^ (index & 1) != 0;
+	}
+
+	public boolean isEmpty() {
+		return this.regions.isEmpty();
+	}
+
+	public void clear() {
+		this.regions.clear();
+	}
+
+	/**
+	 * Calls the consumer for each box of this queue, in order.
+	 * Coordinates are relative to the chunk.
+	 *
+	 * @param consumer The consumer
+	 */
+	public void forEach(UpdateConsumer consumer) {
+		for (int i = 0; i < this.regions.size(); i++) {
+			boolean reobfuscate = isReobfuscation(i);
+			this.regions.get(i).forEach((minX, minY, minZ, maxX, maxY, maxZ) -> consumer.accept(reobfuscate, minX, minY, minZ, maxX, maxY, maxZ));
+		}
+	}
+
+	public interface UpdateConsumer {
+
+		void accept(boolean reobfuscate, int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+	}
+}
@@ -33,6 +33,8 @@ import net.smoofyuniverse.mirage.MirageTimings;
 import net.smoofyuniverse.mirage.api.volume.ChunkView.State;
 import net.smoofyuniverse.mirage.impl.internal.InternalChunk;
 import net.smoofyuniverse.mirage.impl.internal.InternalChunkMap;
+import net.smoofyuniverse.mirage.impl.internal.InternalChunkMapEntry;
+import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
 import net.smoofyuniverse.mirage.impl.internal.compat.CompatUtil;
 import net.smoofyuniverse.mirage.impl.network.NetworkChunk;
 import net.smoofyuniverse.mirage.impl.network.change.BlockChange;
@@ -54,7 +56,7 @@ import java.util.List;
 import java.util.Map;
 
 @Mixin(value = PlayerChunkMapEntry.class, priority = 900)
-public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
+public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener, InternalChunkMapEntry {
 	@Shadow
 	private Chunk chunk;
 	@Shadow
@@ -75,14 +77,24 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 	@Final
 	private PlayerChunkMap playerChunkMap;
 
+	@Shadow
+	public abstract double getClosestPlayerDistance();
+
 	private Map<EntityPlayerMP, DynamicChunk> dynamicChunks;
 	private boolean dynamismEnabled, dirty;
+	private SPacketChunkData chunkPacket;
+	private long chunkPacketTime;
+	private int chunkPacketModifications;
 
 	@Inject(method = "<init>", at = @At("RETURN"))
 	public void onInit(CallbackInfo ci) {
 		this.dynamismEnabled = ((InternalChunkMap) this.playerChunkMap).isDynamismEnabled();
 		if (this.dynamismEnabled)
 			this.dynamicChunks = new HashMap<>();
+
+		// The chunk is being loaded, its cache can be read meanwhile
+		if (this.chunk == null)
+			((InternalWorld) this.playerChunkMap.getWorldServer()).getView().prefetchFromCache(this.pos.x, this.pos.z);
 	}
 
 	@Inject(method = "addPlayer", at = @At(value = "INVOKE", target = "Ljava/util/List;add(Ljava/lang/Object;)Z", shift = Shift.AFTER))
@@ -116,10 +128,11 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 
 		InternalChunk chunk = (InternalChunk) this.chunk;
 		if (chunk.isViewAvailable()) {
-			chunk.getView().obfuscate();
-
-			if (chunk.getView().getState() != State.OBFUSCATED)
+			NetworkChunk view = chunk.getView();
+			if (view.getState() != State.OBFUSCATED) {
+				view.getWorld().getScheduler().request(view, getClosestPlayerDistance());
 				return false;
+			}
 		}
 
 		clearChanges();
@@ -135,7 +148,7 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 			for (EntityPlayerMP p : this.players)
 				addDynamicChunk(p);
 
-			Packet<?> packet = new SPacketChunkData(this.chunk, 65535);
+			Packet<?> packet = getChunkPacket();
 
 			for (Map.Entry<EntityPlayerMP, DynamicChunk> e : this.dynamicChunks.entrySet()) {
 				EntityPlayerMP p = e.getKey();
@@ -154,7 +167,7 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 				CompatUtil.postChunkWatchEvent(this.chunk, p);
 			}
 		} else {
-			Packet<?> packet = new SPacketChunkData(this.chunk, 65535);
+			Packet<?> packet = getChunkPacket();
 
 			for (EntityPlayerMP p : this.players) {
 				p.connection.sendPacket(packet);
@@ -167,6 +180,28 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 		return true;
 	}
 
+	/**
+	 * Gets the full chunk packet shared by all players that start watching this chunk.
+	 * The packet is built again after any block change or any other modification of the chunk such as lights and tile entities.
+	 * It is also dropped after a few seconds so that idle chunks do not keep it in memory.
+	 */
+	private SPacketChunkData getChunkPacket() {
+		int modifications = ((InternalChunk) this.chunk).getModificationCount();
+		if (this.chunkPacket == null || this.chunkPacketModifications != modifications) {
+			this.chunkPacket = new SPacketChunkData(this.chunk, 65535);
+			this.chunkPacketModifications = modifications;
+			this.chunkPacketTime = this.playerChunkMap.getWorldServer().getTotalWorldTime();
+			((InternalChunkMap) this.playerChunkMap).addChunkPacket(this, this.chunkPacketTime);
+		}
+		return this.chunkPacket;
+	}
+
+	@Override
+	public void expireChunkPacket(long time) {
+		if (this.chunkPacketTime <= time)
+			this.chunkPacket = null;
+	}
+
 	private void addDynamicChunk(EntityPlayerMP player) {
 		DynamicChunk chunk = ((InternalChunkMap) this.playerChunkMap).getOrCreateDynamicWorld((Player) player).createChunk(this.pos.x, this.pos.z);
 		this.dynamicChunks.put(player, chunk);
@@ -179,7 +214,7 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 	@Overwrite
 	public void sendToPlayer(EntityPlayerMP p) {
 		if (this.sentToPlayers) {
-			p.connection.sendPacket(new SPacketChunkData(this.chunk, 65535));
+			p.connection.sendPacket(getChunkPacket());
 
 			if (this.dynamismEnabled) {
 				MirageTimings.DYNAMISM.startTiming();
@@ -203,6 +238,8 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 	 */
 	@Overwrite
 	public void blockChanged(int x, int y, int z) {
+		this.chunkPacket = null;
+
 		if (this.sentToPlayers) {
 			this.changedSectionFilter |= 1 << (y >> 4);
 
@@ -333,6 +370,17 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 		blockChanged(x, y, z);
 	}
 
+	@Override
+	public void addSectionChanges(int sections) {
+		this.chunkPacket = null;
+
+		if (this.sentToPlayers) {
+			this.changedSectionFilter |= sections;
+			this.changes = 64;
+			markDirty();
+		}
+	}
+
 	@Override
 	public void sendChanges() {
 		update();
@@ -361,6 +409,14 @@ public abstract class PlayerChunkMapEntryMixin implements ChunkChangeListener {
 		}
 	}
 
+	@Override
+	public void reloadDynamism() {
+		if (this.sentToPlayers && this.dynamismEnabled) {
+			this.dynamicChunks.values().forEach(DynamicChunk::updateCenter);
+			markDirty();
+		}
+	}
+
 	@Override
 	public void markDirty() {
 		if (this.sentToPlayers && !this.dirty) {
@@ -22,10 +22,12 @@
 
 package net.smoofyuniverse.mirage.mixin.server;
 
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.server.management.PlayerChunkMap;
 import net.minecraft.world.WorldServer;
 import net.smoofyuniverse.mirage.impl.internal.InternalChunkMap;
+import net.smoofyuniverse.mirage.impl.internal.InternalChunkMapEntry;
 import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
 import net.smoofyuniverse.mirage.impl.network.NetworkWorld;
 import net.smoofyuniverse.mirage.impl.network.dynamic.DynamicWorld;
@@ -37,19 +39,19 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 @Mixin(PlayerChunkMap.class)
 public class PlayerChunkMapMixin implements InternalChunkMap {
+	private static final int CHUNK_PACKET_LIFETIME = 100;
 
 	@Shadow
 	@Final
 	private WorldServer world;
 
 	private final Map<UUID, DynamicWorld> dynamicWorlds = new HashMap<>();
+	private final Deque<InternalChunkMapEntry> chunkPackets = new ArrayDeque<>();
+	private final LongArrayFIFOQueue chunkPacketTimes = new LongArrayFIFOQueue();
 
 	@Inject(method = "removePlayer", at = @At(value = "INVOKE", target = "Ljava/util/List;remove(Ljava/lang/Object;)Z"))
 	public void onRemovePlayer(EntityPlayerMP player, CallbackInfo ci) {
@@ -61,6 +63,25 @@ public class PlayerChunkMapMixin implements InternalChunkMap {
 		return ((InternalWorld) this.world).getView();
 	}
 
+	@Inject(method = "tick", at = @At("HEAD"))
+	public void onTick(CallbackInfo ci) {
+		NetworkWorld view = getView();
+		view.applyPendingUpdates();
+		view.getScheduler().run();
+		expireChunkPackets();
+	}
+
+	/**
+	 * Drops the chunk packets built more than {@link #CHUNK_PACKET_LIFETIME} ticks ago.
+	 */
+	private void expireChunkPackets() {
+		long time = this.world.getTotalWorldTime() - CHUNK_PACKET_LIFETIME;
+		while (!this.chunkPacketTimes.isEmpty() && this.chunkPacketTimes.firstLong() <= time) {
+			this.chunkPacketTimes.dequeueLong();
+			this.chunkPackets.poll().expireChunkPacket(time);
+		}
+	}
+
 	@Inject(method = "updateMovingPlayer", at = @At("RETURN"))
 	public void onUpdateMovingPlayer(EntityPlayerMP player, CallbackInfo ci) {
 		if (isDynamismEnabled())
@@ -96,5 +117,10 @@ public class PlayerChunkMapMixin implements InternalChunkMap {
 		this.dynamicWorlds.remove(id);
 	}
 
+	@Override
+	public void addChunkPacket(InternalChunkMapEntry entry, long time) {
+		this.chunkPackets.add(entry);
+		this.chunkPacketTimes.enqueue(time);
+	}
 
 }
@@ -23,13 +23,11 @@
 package net.smoofyuniverse.mirage.mixin.world;
 
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.AnvilChunkLoader;
 import net.smoofyuniverse.mirage.Mirage;
 import net.smoofyuniverse.mirage.impl.internal.InternalChunk;
-import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
@@ -39,15 +37,9 @@ import org.spongepowered.asm.mixin.injection.callback.LocalCapture;
 
 @Mixin(AnvilChunkLoader.class)
 public class AnvilChunkLoaderMixin {
-	private InternalWorld world;
 
 	@Inject(method = "writeChunkToNBT", at = @At("RETURN"))
 	public void onWriteChunkToNBT(Chunk chunk, World world, NBTTagCompound compound, CallbackInfo ci) {
-		if (this.world == null)
-			this.world = (InternalWorld) world;
-		else if (this.world != world)
-			Mirage.LOGGER.warn("World change detected in an AnvilChunkLoader! This is going to generate caching errors");
-
 		try {
 			InternalChunk internalChunk = (InternalChunk) chunk;
 			if (internalChunk.isViewAvailable()) {
@@ -63,13 +55,4 @@ public class AnvilChunkLoaderMixin {
 	public void onReadChunkFromNBT(World world, NBTTagCompound compound, CallbackInfoReturnable<Chunk> ci, int cx, int cz, Chunk chunk) {
 		((InternalChunk) chunk).setValidCacheDate(compound.getLong("MirageCacheDate"));
 	}
-
-	@Inject(method = "writeChunkData", at = @At("RETURN"))
-	public void onWriteChunkData(ChunkPos pos, NBTTagCompound compound, CallbackInfo ci) {
-		try {
-			this.world.getView().savePendingChunk(pos.x, pos.z);
-		} catch (Exception e) {
-			Mirage.LOGGER.error("Failed to save a pending network chunk", e);
-		}
-	}
 }
@@ -23,10 +23,13 @@
 package net.smoofyuniverse.mirage.mixin.world;
 
 import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.BitArray;
 import net.minecraft.world.chunk.BlockStateContainer;
+import net.minecraft.world.chunk.IBlockStatePalette;
 import net.smoofyuniverse.mirage.impl.internal.InternalBlockContainer;
 import net.smoofyuniverse.mirage.impl.network.NetworkBlockContainer;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
@@ -34,6 +37,11 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 @Mixin(BlockStateContainer.class)
 public class BlockStateContainerMixin implements InternalBlockContainer {
+	@Shadow
+	protected BitArray storage;
+	@Shadow
+	protected IBlockStatePalette palette;
+
 	private final NetworkBlockContainer networkContainer = new NetworkBlockContainer((BlockStateContainer) (Object) this);
 	private boolean resizing = false;
 
@@ -42,10 +50,20 @@ public class BlockStateContainerMixin implements InternalBlockContainer {
 		return this.networkContainer;
 	}
 
-	@Inject(method = "set(ILnet/minecraft/block/state/IBlockState;)V", at = @At("RETURN"))
+	@Override
+	public BitArray getStorage() {
+		return this.storage;
+	}
+
+	@Override
+	public IBlockStatePalette getPalette() {
+		return this.palette;
+	}
+
+	@Inject(method = "set(ILnet/minecraft/block/state/IBlockState;)V", at = @At("HEAD"))
 	public void onSet(int index, IBlockState state, CallbackInfo ci) {
 		if (!this.resizing)
-			this.networkContainer.set(index, state);
+			this.networkContainer.onRealChange(index, state);
 	}
 
 	@Inject(method = "onResize", at = @At("HEAD"))
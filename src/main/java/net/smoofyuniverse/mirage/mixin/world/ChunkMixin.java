@@ -31,11 +31,12 @@ import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import net.smoofyuniverse.mirage.Mirage;
 import net.smoofyuniverse.mirage.api.volume.ChunkView.State;
-import net.smoofyuniverse.mirage.impl.internal.InternalBlockState;
 import net.smoofyuniverse.mirage.impl.internal.InternalChunk;
 import net.smoofyuniverse.mirage.impl.internal.InternalWorld;
 import net.smoofyuniverse.mirage.impl.network.NetworkChunk;
 import net.smoofyuniverse.mirage.impl.network.NetworkWorld;
+import net.smoofyuniverse.mirage.util.BlockUtil;
+import org.spongepowered.api.block.BlockState;
 import org.spongepowered.asm.mixin.Dynamic;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
@@ -67,6 +68,7 @@ public abstract class ChunkMixin implements InternalChunk {
 	private final Object containersLock = new Object();
 	private NetworkChunk netChunk;
 	private long cacheDate;
+	private int modificationCount;
 
 	@Shadow
 	public abstract IBlockState getBlockState(int x, int y, int z);
@@ -98,6 +100,18 @@ public abstract class ChunkMixin implements InternalChunk {
 		captureContainers();
 	}
 
+	@Inject(method = "onLoad", at = @At("RETURN"))
+	public void onChunkLoad(CallbackInfo ci) {
+		if (this.netChunk != null)
+			this.netChunk.onLoad();
+	}
+
+	@Inject(method = "onUnload", at = @At("RETURN"))
+	public void onChunkUnload(CallbackInfo ci) {
+		if (this.netChunk != null)
+			this.netChunk.onUnload();
+	}
+
 	@Override
 	public boolean captureContainers() {
 		if (this.netChunk == null)
@@ -165,6 +179,16 @@ public abstract class ChunkMixin implements InternalChunk {
 		this.cacheDate = value;
 	}
 
+	@Override
+	public int getModificationCount() {
+		return this.modificationCount;
+	}
+
+	@Inject(method = {"markDirty", "setLightFor", "relightBlock", "generateSkylightMap", "addTileEntity(Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/tileentity/TileEntity;)V", "removeTileEntity"}, at = @At("HEAD"))
+	public void onModify(CallbackInfo ci) {
+		this.modificationCount++;
+	}
+
 	@Inject(method = "setStorageArrays", at = @At("RETURN"))
 	public void onSetStorageArrays(CallbackInfo ci) {
 		if (captureContainers()) {
@@ -263,7 +287,7 @@ public abstract class ChunkMixin implements InternalChunk {
 	@Override
 	public boolean isOpaque(int x, int y, int z) {
 		ExtendedBlockStorage storage = this.storageArrays[y >> 4];
-		return storage != null && ((InternalBlockState) storage.get(x & 15, y & 15, z & 15)).isOpaque();
+		return storage != null && BlockUtil.isOpaque((BlockState) storage.get(x & 15, y & 15, z & 15));
 	}
 
 	@Override
@@ -23,14 +23,16 @@
 package net.smoofyuniverse.mirage.modifier;
 
 import com.flowpowered.math.vector.Vector3i;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.TypeToken;
 import net.smoofyuniverse.mirage.Mirage;
 import net.smoofyuniverse.mirage.api.cache.Signature.Builder;
 import net.smoofyuniverse.mirage.api.modifier.ChunkModifier;
+import net.smoofyuniverse.mirage.api.modifier.PointOperation;
 import net.smoofyuniverse.mirage.api.volume.BlockView;
+import net.smoofyuniverse.mirage.api.volume.SectionView;
 import net.smoofyuniverse.mirage.resource.Resources;
 import net.smoofyuniverse.mirage.util.BlockSet;
+import net.smoofyuniverse.mirage.util.StateSet;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import ninja.leaping.configurate.objectmapping.Setting;
@@ -39,9 +41,7 @@ import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.block.BlockTypes;
 import org.spongepowered.api.world.DimensionType;
 
-import java.util.Collection;
-import java.util.Random;
-import java.util.Set;
+import java.util.*;
 
 import static net.smoofyuniverse.mirage.resource.Categories.COMMON;
 import static net.smoofyuniverse.mirage.resource.Categories.RARE;
@@ -103,6 +103,54 @@ public class HideAllModifier extends ChunkModifier {
 		return false;
 	}
 
+	@Override
+	public boolean isAsyncCompatible() {
+		return true;
+	}
+
+	@Override
+	public boolean isSectionLocal() {
+		return true;
+	}
+
+	@Override
+	public boolean isPointwise() {
+		return true;
+	}
+
+	@Override
+	public Optional<Set<BlockState>> getTargets(Object config) {
+		return Optional.of(((Config.Immutable) config).blocks);
+	}
+
+	@Override
+	public int getMinY(Object config) {
+		return ((Config.Immutable) config).minY;
+	}
+
+	@Override
+	public int getMaxY(Object config) {
+		return ((Config.Immutable) config).maxY;
+	}
+
+	@Override
+	public Collection<BlockState> getReplacements(Object config) {
+		return Collections.singletonList(((Config.Immutable) config).replacement);
+	}
+
+	@Override
+	public Optional<PointOperation> prepare(SectionView section, Random r, Object config) {
+		Config.Immutable cfg = (Config.Immutable) config;
+		final int from = Math.max(cfg.minY - section.getMinY(), 0) << 8, to = Math.min(cfg.maxY - section.getMinY(), 15) << 8 | 255;
+		if (from > to)
+			return Optional.empty();
+
+		final int replacement = section.getOrCreateId(cfg.replacement);
+		final boolean[] targets = section.mapPalette(b -> b.getType() != BlockTypes.AIR && b != cfg.replacement && cfg.blocks.contains(b));
+
+		return Optional.of((i, id) -> i >= from && i <= to && targets[id] ? replacement : id);
+	}
+
 	@Override
 	public void modify(BlockView view, Vector3i min, Vector3i max, Random r, Object config) {
 		Config.Immutable cfg = (Config.Immutable) config;
@@ -140,12 +188,12 @@ public class HideAllModifier extends ChunkModifier {
 		}
 
 		public static final class Immutable {
-			public final Set<BlockState> blocks;
+			public final StateSet blocks;
 			public final BlockState replacement;
 			public final int minY, maxY;
 
 			public Immutable(Collection<BlockState> blocks, BlockState replacement, int minY, int maxY) {
-				this.blocks = ImmutableSet.copyOf(blocks);
+				this.blocks = StateSet.of(blocks);
 				this.replacement = replacement;
 				this.minY = minY;
 				this.maxY = maxY;
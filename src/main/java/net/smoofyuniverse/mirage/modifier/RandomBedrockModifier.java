@@ -27,7 +27,9 @@ import com.google.common.reflect.TypeToken;
 import net.smoofyuniverse.mirage.Mirage;
 import net.smoofyuniverse.mirage.api.cache.Signature.Builder;
 import net.smoofyuniverse.mirage.api.modifier.ChunkModifier;
+import net.smoofyuniverse.mirage.api.modifier.PointOperation;
 import net.smoofyuniverse.mirage.api.volume.BlockView;
+import net.smoofyuniverse.mirage.api.volume.SectionView;
 import net.smoofyuniverse.mirage.resource.Resources;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
@@ -39,6 +41,9 @@ import org.spongepowered.api.world.DimensionType;
 import org.spongepowered.api.world.DimensionTypes;
 import org.spongepowered.api.world.storage.WorldProperties;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
 import java.util.Random;
 
 public class RandomBedrockModifier extends ChunkModifier {
@@ -78,17 +83,65 @@ public class RandomBedrockModifier extends ChunkModifier {
 		builder.append(cfg.ground).append(cfg.height);
 	}
 
+	@Override
+	public boolean isAsyncCompatible() {
+		return true;
+	}
+
+	@Override
+	public boolean isSectionLocal() {
+		return true;
+	}
+
+	@Override
+	public boolean isPointwise() {
+		return true;
+	}
+
+	@Override
+	public int getMaxY(Object config) {
+		return ((Config.Immutable) config).height;
+	}
+
+	@Override
+	public Collection<BlockState> getReplacements(Object config) {
+		return Arrays.asList(BlockTypes.BEDROCK.getDefaultState(), ((Config.Immutable) config).ground);
+	}
+
+	@Override
+	public Optional<PointOperation> prepare(SectionView section, Random r, Object config) {
+		Config.Immutable cfg = (Config.Immutable) config;
+
+		final int height = cfg.height, y0 = section.getMinY();
+		if (height == 0 || height < y0)
+			return Optional.empty();
+		final int to = Math.min(height - y0, 15) << 8 | 255;
+
+		final int ground = section.getOrCreateId(cfg.ground), bedrock = section.getOrCreateId(BlockTypes.BEDROCK.getDefaultState());
+		final boolean[] isBedrock = section.mapPalette(b -> b.getType() == BlockTypes.BEDROCK);
+		final long[] exposure = section.getExposureMask();
+
+		return Optional.of((i, id) -> {
+			if (i > to || SectionView.bit(exposure, i))
+				return id;
+
+			if (y0 + (i >> 8) <= r.nextInt(height))
+				return bedrock;
+			return isBedrock[id] ? ground : id;
+		});
+	}
+
 	@Override
 	public void modify(BlockView view, Vector3i min, Vector3i max, Random r, Object config) {
 		Config.Immutable cfg = (Config.Immutable) config;
 
-		int height = Math.min(max.getY(), cfg.height);
-		if (height == 0)
+		final int height = cfg.height, minY = min.getY(), maxY = Math.min(max.getY(), height);
+		if (height == 0 || minY > maxY)
 			return;
 
 		for (int x = min.getX(); x <= max.getX(); x++) {
 			for (int z = min.getZ(); z <= max.getZ(); z++) {
-				for (int y = height; y >= 0; --y) {
+				for (int y = maxY; y >= minY; --y) {
 					if (view.isExposed(x, y, z))
 						continue;
 
@@ -29,9 +29,12 @@ import net.smoofyuniverse.bingo.WeightedList;
 import net.smoofyuniverse.mirage.Mirage;
 import net.smoofyuniverse.mirage.api.cache.Signature.Builder;
 import net.smoofyuniverse.mirage.api.modifier.ChunkModifier;
+import net.smoofyuniverse.mirage.api.modifier.PointOperation;
 import net.smoofyuniverse.mirage.api.volume.BlockView;
+import net.smoofyuniverse.mirage.api.volume.SectionView;
 import net.smoofyuniverse.mirage.resource.Resources;
 import net.smoofyuniverse.mirage.util.BlockSet;
+import net.smoofyuniverse.mirage.util.StateSet;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import ninja.leaping.configurate.objectmapping.Setting;
@@ -93,6 +96,59 @@ public class RandomBlockModifier extends ChunkModifier {
 		builder.append(cfg.blocks).append(cfg.replacements).append(cfg.minY).append(cfg.maxY);
 	}
 
+	@Override
+	public boolean isAsyncCompatible() {
+		return true;
+	}
+
+	@Override
+	public boolean isSectionLocal() {
+		return true;
+	}
+
+	@Override
+	public boolean isPointwise() {
+		return true;
+	}
+
+	@Override
+	public Optional<Set<BlockState>> getTargets(Object config) {
+		return Optional.of(((Config.Immutable) config).blocks);
+	}
+
+	@Override
+	public int getMinY(Object config) {
+		return ((Config.Immutable) config).minY;
+	}
+
+	@Override
+	public int getMaxY(Object config) {
+		return ((Config.Immutable) config).maxY;
+	}
+
+	@Override
+	public Collection<BlockState> getReplacements(Object config) {
+		return ((Config.Immutable) config).replacementSet;
+	}
+
+	@Override
+	public Optional<PointOperation> prepare(SectionView section, Random r, Object config) {
+		Config.Immutable cfg = (Config.Immutable) config;
+		final int from = Math.max(cfg.minY - section.getMinY(), 0) << 8, to = Math.min(cfg.maxY - section.getMinY(), 15) << 8 | 255;
+		if (from > to)
+			return Optional.empty();
+
+		// Resolved before building the tables since adding a state to the palette invalidates ids
+		final int[] ids = new int[cfg.states.length];
+		for (int k = 0; k < ids.length; k++)
+			ids[k] = section.getOrCreateId(cfg.states[k]);
+
+		final boolean[] targets = section.mapPalette(b -> b.getType() != BlockTypes.AIR && cfg.blocks.contains(b));
+		final long[] exposure = section.getExposureMask();
+
+		return Optional.of((i, id) -> i >= from && i <= to && targets[id] && !SectionView.bit(exposure, i) ? ids[cfg.pick(r)] : id);
+	}
+
 	@Override
 	public void modify(BlockView view, Vector3i min, Vector3i max, Random r, Object config) {
 		Config.Immutable cfg = (Config.Immutable) config;
@@ -106,7 +162,7 @@ public class RandomBlockModifier extends ChunkModifier {
 						continue;
 
 					if (cfg.blocks.contains(b) && !view.isExposed(x, y, z))
-						view.setBlock(x, y, z, cfg.replacements.get(r).value);
+						view.setBlock(x, y, z, cfg.states[cfg.pick(r)]);
 				}
 			}
 		}
@@ -126,19 +182,53 @@ public class RandomBlockModifier extends ChunkModifier {
 		public int maxY = 255;
 
 		public Immutable toImmutable() {
-			return new Immutable(this.blocks.getAll(), WeightedList.of(this.replacements), this.minY, this.maxY);
+			return new Immutable(this.blocks.getAll(), this.replacements, this.minY, this.maxY);
 		}
 
 		public static final class Immutable {
-			public final Set<BlockState> blocks;
+			public final StateSet blocks;
 			public final WeightedList<BlockState> replacements;
+			public final Set<BlockState> replacementSet;
 			public final int minY, maxY;
 
-			public Immutable(Collection<BlockState> blocks, WeightedList<BlockState> replacements, int minY, int maxY) {
-				this.blocks = ImmutableSet.copyOf(blocks);
-				this.replacements = replacements;
+			private final BlockState[] states;
+			private final double[] cumulativeWeights;
+
+			public Immutable(Collection<BlockState> blocks, Map<BlockState, Double> replacements, int minY, int maxY) {
+				this.blocks = StateSet.of(blocks);
+				this.replacements = WeightedList.of(replacements);
+				this.replacementSet = ImmutableSet.copyOf(replacements.keySet());
 				this.minY = minY;
 				this.maxY = maxY;
+
+				List<BlockState> states = new ArrayList<>();
+				List<Double> weights = new ArrayList<>();
+				this.replacements.forEach(e -> {
+					states.add(e.value);
+					weights.add((double) e.weight);
+				});
+
+				this.states = states.toArray(new BlockState[0]);
+				this.cumulativeWeights = new double[weights.size()];
+				double total = 0;
+				for (int k = 0; k < this.cumulativeWeights.length; k++) {
+					total += weights.get(k);
+					this.cumulativeWeights[k] = total;
+				}
+			}
+
+			/**
+			 * Picks a replacement randomly according to the weights.
+			 *
+			 * @param r The random
+			 * @return The index of the replacement in {@link #states}
+			 */
+			private int pick(Random r) {
+				int last = this.cumulativeWeights.length - 1;
+				double value = r.nextDouble() * this.cumulativeWeights[last];
+				int k = Arrays.binarySearch(this.cumulativeWeights, value);
+				k = k < 0 ? -k - 1 : k + 1;
+				return Math.min(k, last);
 			}
 		}
 	}
@@ -23,19 +23,24 @@
 package net.smoofyuniverse.mirage.modifier;
 
 import com.flowpowered.math.vector.Vector3i;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.TypeToken;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
 import net.smoofyuniverse.mirage.Mirage;
 import net.smoofyuniverse.mirage.api.cache.Signature.Builder;
 import net.smoofyuniverse.mirage.api.modifier.ChunkModifier;
 import net.smoofyuniverse.mirage.api.volume.BlockView;
+import net.smoofyuniverse.mirage.api.volume.ChunkView;
+import net.smoofyuniverse.mirage.api.volume.SectionView;
 import net.smoofyuniverse.mirage.api.volume.WorldView;
 import net.smoofyuniverse.mirage.resource.Resources;
 import net.smoofyuniverse.mirage.util.BlockSet;
+import net.smoofyuniverse.mirage.util.StateSet;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import ninja.leaping.configurate.objectmapping.Setting;
 import ninja.leaping.configurate.objectmapping.serialize.ConfigSerializable;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.world.DimensionType;
 import org.spongepowered.api.world.World;
@@ -44,6 +49,7 @@ import org.spongepowered.api.world.gen.Populator;
 import org.spongepowered.api.world.gen.WorldGenerator;
 import org.spongepowered.api.world.gen.populator.Ore;
 
+import javax.annotation.Nullable;
 import java.util.*;
 import java.util.function.Predicate;
 
@@ -94,6 +100,16 @@ public class RandomVeinModifier extends ChunkModifier {
 		builder.append(cfg.blocks).append(cfg.density).append(cfg.dynamism).append(cfg.minY).append(cfg.maxY);
 	}
 
+	@Override
+	public int getMinY(Object config) {
+		return ((Config.Immutable) config).minY;
+	}
+
+	@Override
+	public int getMaxY(Object config) {
+		return ((Config.Immutable) config).maxY;
+	}
+
 	@Override
 	public void modify(BlockView view, Vector3i min, Vector3i max, Random r, Object config) {
 		Config.Immutable cfg = (Config.Immutable) config;
@@ -110,37 +126,22 @@ public class RandomVeinModifier extends ChunkModifier {
 		World world = (World) worldView.getStorage();
 
 		// List ores
-		WorldGenerator generator = world.getWorldGenerator();
-		List<Ore> ores = new ArrayList<>();
-
-		for (Populator pop : generator.getPopulators()) {
-			if (pop instanceof Ore && cfg.blocks.contains(((Ore) pop).getOreBlock()))
-				ores.add((Ore) pop);
-		}
-
-		List<BiomeType> biomes = new ArrayList<>();
-		for (int x = minX; x <= maxX; x++) {
-			for (int z = minZ; z <= maxZ; z++) {
-				BiomeType biome = world.getBiome(x, 0, z);
-				if (!biomes.contains(biome))
-					biomes.add(biome);
-			}
-		}
-
-		for (BiomeType biome : biomes) {
-			for (Populator pop : generator.getBiomeSettings(biome).getPopulators()) {
-				if (pop instanceof Ore && cfg.blocks.contains(((Ore) pop).getOreBlock()))
-					ores.add((Ore) pop);
-			}
-		}
+		OreCache cache = cfg.ores.computeIfAbsent(world.getWorldGenerator(), g -> new OreCache(g, cfg.blocks));
+		List<Ore> ores = new ArrayList<>(cache.global);
+		for (BiomeType biome : getBiomes(view, world, minX, minZ, maxX, maxZ))
+			ores.addAll(cache.get(biome));
 
 		// Simulate generation
 		int sizeX = maxX - minX + 1, sizeZ = maxZ - minZ + 1;
 		double factor = cfg.density * sizeX * sizeZ / 256d;
 
 		int worldMinY = worldView.getBlockMin().getY(), worldMaxY = worldView.getBlockMax().getY();
+		VeinWriter writer = new VeinWriter(worldView, view instanceof ChunkView ? (ChunkView) view : null, ores, useDynamism ? cfg.dynamism : 0);
+
+		for (int o = 0; o < ores.size(); o++) {
+			Ore ore = ores.get(o);
+			writer.setOre(o);
 
-		for (Ore ore : ores) {
 			double amountD = ore.getDepositsPerChunk().getAmount(r) * factor;
 			int amountI = (int) amountD;
 
@@ -148,9 +149,6 @@ public class RandomVeinModifier extends ChunkModifier {
 			if (dif != 0f && r.nextDouble() < dif)
 				amountI++;
 
-			Predicate<BlockState> predicate = ore.getPlacementCondition();
-			BlockState block = ore.getOreBlock();
-
 			for (int n = 0; n < amountI; n++) {
 				int posX = minX + r.nextInt(sizeX), posY = ore.getHeight().getFlooredAmount(r), posZ = minZ + r.nextInt(sizeZ);
 				if (posY < minY || posY > maxY)
@@ -187,16 +185,8 @@ public class RandomVeinModifier extends ChunkModifier {
 									for (int z = fromZ; z <= toZ; ++z) {
 										float dz2 = squared((float) z + 0.5f - centerZ);
 
-										if (dx2 + dy2 + dz2 < radius2 && predicate.test(worldView.getBlock(x, y, z))) {
-											if (worldView.isExposed(x, y, z)) {
-												if (useDynamism) {
-													worldView.setDynamism(x, y, z, cfg.dynamism);
-													worldView.setBlock(x, y, z, block);
-												}
-											} else {
-												worldView.setBlock(x, y, z, block);
-											}
-										}
+										if (dx2 + dy2 + dz2 < radius2)
+											writer.place(x, y, z);
 									}
 								}
 							}
@@ -207,6 +197,161 @@ public class RandomVeinModifier extends ChunkModifier {
 		}
 	}
 
+	private static Collection<BiomeType> getBiomes(BlockView view, World world, int minX, int minZ, int maxX, int maxZ) {
+		Set<BiomeType> biomes = new LinkedHashSet<>();
+
+		if (view instanceof ChunkView) {
+			// Reads the biome array of the chunk directly
+			byte[] array = ((Chunk) view.getStorage()).getBiomeArray();
+			for (int x = minX; x <= maxX; x++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					Biome biome = Biome.getBiome(array[(z & 15) << 4 | (x & 15)] & 255);
+					biomes.add(biome == null ? world.getBiome(x, 0, z) : (BiomeType) biome);
+				}
+			}
+		} else {
+			for (int x = minX; x <= maxX; x++) {
+				for (int z = minZ; z <= maxZ; z++)
+					biomes.add(world.getBiome(x, 0, z));
+			}
+		}
+
+		return biomes;
+	}
+
+	/**
+	 * Places the blocks of veins.
+	 * Blocks inside the chunk are read and written by palette id in the sections of the chunk.
+	 * Blocks spilling into neighbor chunks go through the world.
+	 */
+	private static final class VeinWriter {
+		final WorldView world;
+		final ChunkView chunk;
+		final List<Ore> ores;
+		final int dynamism, minX, minZ;
+
+		final SectionView[] sections = new SectionView[16];
+		final int[][] blockIds = new int[16][];
+		final boolean[][] conditions = new boolean[16][];
+
+		int ore;
+		Predicate<BlockState> predicate;
+		BlockState block;
+
+		VeinWriter(WorldView world, @Nullable ChunkView chunk, List<Ore> ores, int dynamism) {
+			this.world = world;
+			this.chunk = chunk;
+			this.ores = ores;
+			this.dynamism = dynamism;
+			this.minX = chunk == null ? 0 : chunk.getBlockMin().getX();
+			this.minZ = chunk == null ? 0 : chunk.getBlockMin().getZ();
+		}
+
+		void setOre(int ore) {
+			Ore o = this.ores.get(ore);
+			this.ore = ore;
+			this.predicate = o.getPlacementCondition();
+			this.block = o.getOreBlock();
+			Arrays.fill(this.conditions, null);
+		}
+
+		@Nullable
+		SectionView getSection(int index) {
+			SectionView section = this.sections[index];
+			if (section == null && this.blockIds[index] == null) {
+				section = this.chunk.getSection(index).orElse(null);
+				if (section != null) {
+					// Ore blocks are added to the palette only once a voxel is written
+					int[] ids = new int[this.ores.size()];
+					Arrays.fill(ids, -1);
+					this.sections[index] = section;
+					this.blockIds[index] = ids;
+				} else {
+					this.blockIds[index] = new int[0];
+				}
+			}
+			return section;
+		}
+
+		void place(int x, int y, int z) {
+			if (this.chunk != null && ((x - this.minX) & ~15) == 0 && ((z - this.minZ) & ~15) == 0) {
+				SectionView section = getSection(y >> 4);
+				if (section != null) {
+					boolean[] condition = this.conditions[y >> 4];
+					if (condition == null)
+						this.conditions[y >> 4] = condition = section.mapPalette(this.predicate);
+
+					int i = SectionView.index(x & 15, y & 15, z & 15);
+					if (!condition[section.getId(i)])
+						return;
+
+					if (this.chunk.isExposed(x, y, z)) {
+						if (this.dynamism == 0)
+							return;
+						this.chunk.setDynamism(x, y, z, this.dynamism);
+					}
+
+					int[] ids = this.blockIds[y >> 4];
+					int id = ids[this.ore];
+					if (id == -1) {
+						int size = section.getPaletteSize();
+						id = section.getOrCreateId(this.block);
+						if (section.getPaletteSize() != size) {
+							// The palette has grown, previous ids and tables might be stale
+							Arrays.fill(ids, -1);
+							this.conditions[y >> 4] = null;
+						}
+						ids[this.ore] = id;
+					}
+					section.setId(i, id);
+					return;
+				}
+			}
+
+			if (this.predicate.test(this.world.getBlock(x, y, z))) {
+				if (this.world.isExposed(x, y, z)) {
+					if (this.dynamism == 0)
+						return;
+					this.world.setDynamism(x, y, z, this.dynamism);
+				}
+				this.world.setBlock(x, y, z, this.block);
+			}
+		}
+	}
+
+	/**
+	 * The ore populators of a world generator, filtered by the configured blocks.
+	 * All biomes are listed once when the cache is created so it can be read concurrently without locking.
+	 */
+	private static final class OreCache {
+		final StateSet blocks;
+		final List<Ore> global;
+		final Map<BiomeType, List<Ore>> biomes;
+
+		OreCache(WorldGenerator generator, StateSet blocks) {
+			this.blocks = blocks;
+			this.global = filter(generator.getPopulators());
+
+			Map<BiomeType, List<Ore>> biomes = new IdentityHashMap<>();
+			for (BiomeType biome : Sponge.getRegistry().getAllOf(BiomeType.class))
+				biomes.put(biome, filter(generator.getBiomeSettings(biome).getPopulators()));
+			this.biomes = Collections.unmodifiableMap(biomes);
+		}
+
+		List<Ore> get(BiomeType biome) {
+			return this.biomes.getOrDefault(biome, Collections.emptyList());
+		}
+
+		private List<Ore> filter(List<Populator> populators) {
+			List<Ore> ores = new ArrayList<>();
+			for (Populator pop : populators) {
+				if (pop instanceof Ore && this.blocks.contains(((Ore) pop).getOreBlock()))
+					ores.add((Ore) pop);
+			}
+			return ores.isEmpty() ? Collections.emptyList() : ores;
+		}
+	}
+
 	@ConfigSerializable
 	public static final class Config {
 		public static final TypeToken<Config> TOKEN = TypeToken.of(Config.class);
@@ -227,13 +372,17 @@ public class RandomVeinModifier extends ChunkModifier {
 		}
 
 		public static final class Immutable {
-			public final Set<BlockState> blocks;
+			public final StateSet blocks;
 			public final double density;
 			public final int dynamism;
 			public final int minY, maxY;
 
+			// Populators by world generator, dropped along with this configuration on reload
+			// Chunks of different worlds might be obfuscated concurrently
+			private final Map<WorldGenerator, OreCache> ores = Collections.synchronizedMap(new WeakHashMap<>());
+
 			public Immutable(Collection<BlockState> blocks, double density, int dynamism, int minY, int maxY) {
-				this.blocks = ImmutableSet.copyOf(blocks);
+				this.blocks = StateSet.of(blocks);
 				this.density = density;
 				this.dynamism = dynamism;
 				this.minY = minY;
@@ -22,12 +22,54 @@
 
 package net.smoofyuniverse.mirage.util;
 
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.ObjectIntIdentityMap;
+import net.minecraft.util.math.MathHelper;
 import net.smoofyuniverse.mirage.impl.internal.InternalBlockState;
 import org.spongepowered.api.block.BlockState;
 
 public class BlockUtil {
+	@SuppressWarnings("deprecation")
+	private static final ObjectIntIdentityMap<IBlockState> BLOCK_STATE_IDS = Block.BLOCK_STATE_IDS;
+
+	private static volatile boolean[] opacity = new boolean[0];
 
 	public static boolean isOpaque(BlockState state) {
-		return ((InternalBlockState) state).isOpaque();
+		return isOpaque(BLOCK_STATE_IDS.get((IBlockState) state));
+	}
+
+	/**
+	 * @param id The state id
+	 * @return Whether the state associated with the id is opaque
+	 */
+	public static boolean isOpaque(int id) {
+		boolean[] table = opacity;
+		return id >= 0 && id < table.length && table[id];
+	}
+
+	/**
+	 * Gets the opacity of all states indexed by state id.
+	 * The table covers at least all ids of the global palette and must not be modified.
+	 *
+	 * @return The opacity table
+	 */
+	public static boolean[] getOpacityTable() {
+		return opacity;
+	}
+
+	/**
+	 * Builds the opacity table.
+	 * This method must be called after all blocks have been registered and optimized, and again when state ids are reassigned.
+	 */
+	public static void buildOpacityTable() {
+		int size = 1 << MathHelper.log2DeBruijn(BLOCK_STATE_IDS.size());
+		for (IBlockState state : BLOCK_STATE_IDS)
+			size = Math.max(size, BLOCK_STATE_IDS.get(state) + 1);
+
+		boolean[] table = new boolean[size];
+		for (IBlockState state : BLOCK_STATE_IDS)
+			table[BLOCK_STATE_IDS.get(state)] = ((InternalBlockState) state).isOpaque();
+		opacity = table;
 	}
 }
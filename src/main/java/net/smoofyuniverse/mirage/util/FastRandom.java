@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.util;
+
+import java.util.Random;
+
+/**
+ * A fast Random based on the xoroshiro128+ generator.
+ * Unlike {@link Random}, this object is not thread-safe and must not be shared between threads.
+ * The same seed always produces the same sequence.
+ */
+public class FastRandom extends Random {
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long s0, s1;
+
+	public FastRandom() {
+		this(System.nanoTime());
+	}
+
+	public FastRandom(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * Creates a generator for the given key.
+	 * Distinct keys produce independent sequences.
+	 *
+	 * @param seed The base seed
+	 * @param a    The first component of the key
+	 * @param b    The second component of the key
+	 * @return The generator
+	 */
+	public static FastRandom of(long seed, int a, int b) {
+		return new FastRandom(mix(seed + ((long) a << 32 | b & 0xFFFFFFFFL) * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * The finalizer of the SplitMix64 generator.
+	 *
+	 * @param z The value
+	 * @return The mixed value
+	 */
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		this.s0 = mix(seed + GOLDEN_GAMMA);
+		this.s1 = mix(seed + 2 * GOLDEN_GAMMA);
+		if ((this.s0 | this.s1) == 0)
+			this.s1 = GOLDEN_GAMMA;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		final long s0 = this.s0;
+		long s1 = this.s1;
+		final long result = s0 + s1;
+
+		s1 ^= s0;
+		this.s0 = Long.rotateLeft(s0, 24) ^ s1 ^ (s1 << 16);
+		this.s1 = Long.rotateLeft(s1, 37);
+		return result;
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("bound must be positive");
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	@Override
+	public float nextFloat() {
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.util;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.ObjectIntIdentityMap;
+import org.spongepowered.api.block.BlockState;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * An immutable set of block states backed by a flat table indexed by state id.
+ * State ids may be reassigned when the registries change, see {@link #invalidateTables()}.
+ */
+public final class StateSet extends AbstractSet<BlockState> {
+	@SuppressWarnings("deprecation")
+	private static final ObjectIntIdentityMap<IBlockState> BLOCK_STATE_IDS = Block.BLOCK_STATE_IDS;
+
+	private static volatile int generation;
+
+	private final ImmutableList<BlockState> states;
+	private volatile Table table;
+
+	private StateSet(Collection<BlockState> states) {
+		this.states = ImmutableList.copyOf(new LinkedHashSet<>(states));
+		this.table = buildTable();
+	}
+
+	private Table buildTable() {
+		int gen = generation;
+
+		int max = -1;
+		for (BlockState state : this.states)
+			max = Math.max(max, BLOCK_STATE_IDS.get((IBlockState) state));
+
+		boolean[] values = new boolean[max + 1];
+		for (BlockState state : this.states) {
+			int id = BLOCK_STATE_IDS.get((IBlockState) state);
+			if (id >= 0)
+				values[id] = true;
+		}
+		return new Table(gen, values);
+	}
+
+	private boolean contains(int id) {
+		Table t = this.table;
+		if (t.generation != generation)
+			this.table = t = buildTable();
+		return id >= 0 && id < t.values.length && t.values[id];
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof IBlockState && contains(BLOCK_STATE_IDS.get((IBlockState) o));
+	}
+
+	@Override
+	public Iterator<BlockState> iterator() {
+		return this.states.iterator();
+	}
+
+	@Override
+	public int size() {
+		return this.states.size();
+	}
+
+	public static StateSet of(Collection<BlockState> states) {
+		return states instanceof StateSet ? (StateSet) states : new StateSet(states);
+	}
+
+	/**
+	 * Marks the tables of all sets as outdated.
+	 * This method must be called when state ids are reassigned, each set rebuilds its table on next use.
+	 */
+	public static void invalidateTables() {
+		generation++;
+	}
+
+	private static final class Table {
+		final int generation;
+		final boolean[] values;
+
+		Table(int generation, boolean[] values) {
+			this.generation = generation;
+			this.values = values;
+		}
+	}
+}
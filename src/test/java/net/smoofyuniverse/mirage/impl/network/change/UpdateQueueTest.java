@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018-2021 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.mirage.impl.network.change;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class UpdateQueueTest {
+	private static final int RADIUS = 2;
+
+	/**
+	 * A fake view where a reobfuscation hides every block of the area regardless of exposure, like hide_all.
+	 */
+	private static final class FakeView {
+		final boolean[] hidden = new boolean[65536];
+
+		FakeView() {
+			apply(true, 0, 0, 0, 15, 255, 15);
+		}
+
+		void apply(boolean reobfuscate, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					for (int x = minX; x <= maxX; x++)
+						this.hidden[y << 8 | z << 4 | x] = reobfuscate;
+				}
+			}
+		}
+	}
+
+	private static int[] box(int x, int y, int z) {
+		return new int[]{Math.max(x - RADIUS, 0), Math.max(y - RADIUS, 0), Math.max(z - RADIUS, 0),
+				Math.min(x + RADIUS, 15), Math.min(y + RADIUS, 255), Math.min(z + RADIUS, 15)};
+	}
+
+	/**
+	 * Applies the changes one by one, then through a queue, and compares the resulting views.
+	 *
+	 * @param reobfuscate For each change, whether the block became opaque
+	 * @param boxes       For each change, the area to update
+	 */
+	private static void assertSameView(boolean[] reobfuscate, int[][] boxes) {
+		FakeView direct = new FakeView(), queued = new FakeView();
+		UpdateQueue queue = new UpdateQueue();
+
+		for (int i = 0; i < boxes.length; i++) {
+			int[] b = boxes[i];
+			direct.apply(reobfuscate[i], b[0], b[1], b[2], b[3], b[4], b[5]);
+			queue.add(reobfuscate[i], b[0], b[1], b[2], b[3], b[4], b[5]);
+		}
+		queue.forEach(queued::apply);
+
+		assertArrayEquals(direct.hidden, queued.hidden);
+	}
+
+	@Test
+	public void breakThenPlace() {
+		int[] b = box(8, 64, 8);
+		assertSameView(new boolean[]{false, true}, new int[][]{b, b});
+	}
+
+	@Test
+	public void placeThenBreak() {
+		int[] b = box(8, 64, 8);
+		assertSameView(new boolean[]{true, false}, new int[][]{b, b});
+	}
+
+	@Test
+	public void interleavedChanges() {
+		assertSameView(new boolean[]{false, false, true, false},
+				new int[][]{box(8, 64, 8), box(8, 64, 8), box(9, 64, 8), box(10, 64, 8)});
+	}
+
+	@Test
+	public void clearedQueueAppliesNothing() {
+		FakeView view = new FakeView();
+		UpdateQueue queue = new UpdateQueue();
+		queue.add(false, 0, 0, 0, 15, 255, 15);
+		queue.clear();
+		queue.forEach(view::apply);
+
+		assertArrayEquals(new FakeView().hidden, view.hidden);
+	}
+}